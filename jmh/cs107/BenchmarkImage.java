@@ -0,0 +1,68 @@
+package cs107;
+
+import java.io.File;
+import java.util.Random;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Inputs of the JMH benchmarks : the images of the "references" folder, then synthetic worst cases
+ * (random pixels, a gradient without runs and a single colour).
+ * @apiNote Used as a @Param of CodecBenchmark, which then runs on every constant
+ */
+public enum BenchmarkImage {
+
+    DICE("dice"), BEACH("beach"), EPFL("EPFL"), RANDOM("random"), CUBE("cube"),
+    NOISE(null), GRADIENT(null), SOLID(null);
+
+    /**
+     * Size of the synthetic images
+     */
+    private static final int SYNTHETIC_SIZE = 1024;
+
+    /**
+     * Input of the benchmarks
+     * @param rgba (Helper.PixelImage) - Pixels of the image (RGBA packed)
+     * @param image (Helper.Image) - Same pixels (ARGB packed)
+     * @param qoi (byte[]) - Encoding of the image
+     */
+    record Input(Helper.PixelImage rgba, Helper.Image image, byte[] qoi){}
+
+    private final String reference;
+
+    /**
+     * @param reference (String) - Name of the files of the "references" folder, null for a synthetic image
+     */
+    BenchmarkImage(String reference){
+        this.reference = reference;
+    }
+
+    /**
+     * Build the input of the benchmarks
+     * @return (Input) - The input, always the same for a given constant
+     */
+    Input input(){
+        return switch (this){
+            case NOISE -> {
+                var random = new Random(107);
+                yield synthetic(i -> random.nextInt());
+            }
+            case GRADIENT -> synthetic(i -> (i % SYNTHETIC_SIZE) * 0x00_01_01_00 | 0xFF);
+            case SOLID -> synthetic(i -> 0x80_80_80_FF);
+            default -> {
+                var image = Helper.readImage("references" + File.separator + reference + ".png");
+                var rgba = QOIDecoder.decodeQoiImage(Helper.read("references" + File.separator + reference + ".qoi"));
+                yield new Input(rgba, image, QOIEncoder.qoiFile(rgba));
+            }
+        };
+    }
+
+    private static Input synthetic(IntUnaryOperator pixel){
+        var data = new int[SYNTHETIC_SIZE * SYNTHETIC_SIZE];
+        for (var i = 0; i < data.length; ++i)
+            data[i] = pixel.applyAsInt(i);
+        var rgba = new Helper.PixelImage(data, SYNTHETIC_SIZE, SYNTHETIC_SIZE, Helper.PixelFormat.RGBA,
+                QOISpecification.RGBA, QOISpecification.sRGB);
+        return new Input(rgba, rgba.toImage(), QOIEncoder.qoiFile(rgba));
+    }
+
+}
@@ -0,0 +1,174 @@
+package cs107;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the hot paths of the codec (encoder, decoder, conversions and file I/O)
+ * on each of the inputs of BenchmarkImage.
+ * Each benchmark reports its operations per second, and with the counters of CodecBenchmark.Throughput
+ * the bytes per second (":bytes", raw RGBA pixels, or file content for the I/O) and the pixels per second (":pixels").
+ * @apiNote Usage : gradle jmh, which runs with "-prof gc" to report the allocation per operation
+ * (gc.alloc.rate.norm). Other options with -PjmhArgs="...", for instance -PjmhArgs="-prof gc encodeData"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    /**
+     * Number of pixels per segment of QOIDecoder::decodeQoiImageParallel
+     */
+    private static final int SEGMENT_PIXELS = 1 << 14;
+
+    /**
+     * Input of the benchmarks, every constant when no value is given
+     */
+    @Param
+    public BenchmarkImage image;
+
+    /**
+     * Bytes and pixels processed by the benchmarks, reported per second next to the operations
+     * (the counters are "operations" of JMH, hence the unit ops/s)
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+
+        public long bytes;
+        public long pixels;
+
+        @Setup(Level.Iteration)
+        public void reset(){
+            bytes = 0;
+            pixels = 0;
+        }
+
+        void add(long bytes, long pixels){
+            this.bytes += bytes;
+            this.pixels += pixels;
+        }
+    }
+
+    private BenchmarkImage.Input input;
+    private long pixels;
+    private long raw;
+    private int[] data;
+    private byte[] output;
+    private int[] decoded;
+    private byte[][] channels;
+    private String file;
+    private QOIReusableEncoder encoder;
+    private QOIReusableDecoder decoder;
+
+    @Setup
+    public void setup(){
+        input = image.input();
+        data = input.rgba().data();
+        pixels = data.length;
+        raw = 4 * pixels;
+        output = new byte[QOIEncoder.maxDataSize(data.length)];
+        decoded = new int[data.length];
+        channels = ArrayUtils.imageToChannels(input.image().data());
+        file = "benchmark_" + image + ".qoi";
+        encoder = new QOIReusableEncoder();
+        decoder = new QOIReusableDecoder();
+        Helper.write(file, input.qoi());
+    }
+
+    @TearDown
+    public void tearDown(){
+        new File("res" + File.separator + file).delete();
+    }
+
+    @Benchmark
+    public int encodeData(Throughput throughput){
+        throughput.add(raw, pixels);
+        return QOIEncoder.encodeData(data, 0, data.length, output, 0);
+    }
+
+    @Benchmark
+    public int decodeData(Throughput throughput){
+        throughput.add(raw, pixels);
+        return QOIDecoder.decodeData(input.qoi(), QOISpecification.HEADER_SIZE,
+                input.qoi().length - QOISpecification.QOI_EOF.length, decoded, 0, decoded.length);
+    }
+
+    @Benchmark
+    public Helper.PixelImage decodeQoiImage(Throughput throughput){
+        throughput.add(raw, pixels);
+        return QOIDecoder.decodeQoiImage(input.qoi());
+    }
+
+    /**
+     * To compare with decodeQoiImage, on several cores (-PjmhArgs="-prof gc decodeQoiImage")
+     */
+    @Benchmark
+    public Helper.PixelImage decodeQoiImageParallel(Throughput throughput){
+        throughput.add(raw, pixels);
+        return QOIDecoder.decodeQoiImageParallel(input.qoi(), SEGMENT_PIXELS);
+    }
+
+    @Benchmark
+    public int reusableEncode(Throughput throughput){
+        throughput.add(raw, pixels);
+        return encoder.encode(input.rgba());
+    }
+
+    @Benchmark
+    public Helper.PixelImage reusableDecode(Throughput throughput){
+        throughput.add(raw, pixels);
+        return decoder.decode(input.qoi());
+    }
+
+    @Benchmark
+    public byte[][] imageToChannels(Throughput throughput){
+        throughput.add(raw, pixels);
+        return ArrayUtils.imageToChannels(input.image().data());
+    }
+
+    @Benchmark
+    public int[][] channelsToImage(Throughput throughput){
+        throughput.add(raw, pixels);
+        return ArrayUtils.channelsToImage(channels, input.rgba().height(), input.rgba().width());
+    }
+
+    @Benchmark
+    public int[] argbToRgba(Throughput throughput){
+        throughput.add(raw, pixels);
+        ArrayUtils.argbToRgba(input.image().data(), decoded, 0, true);
+        return decoded;
+    }
+
+    @Benchmark
+    public String helperWrite(Throughput throughput){
+        throughput.add(input.qoi().length, pixels);
+        Helper.write(file, input.qoi());
+        return file;
+    }
+
+    @Benchmark
+    public byte[] helperRead(Throughput throughput){
+        throughput.add(input.qoi().length, pixels);
+        return Helper.read("res" + File.separator + file);
+    }
+
+}
@@ -1,6 +1,8 @@
 package cs107;
 
 import java.util.ArrayList;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 /**
  * Utility class to manipulate arrays.
@@ -251,25 +253,16 @@ public final class ArrayUtils {
             assert input [i] != null;
         }
 
-        int tabSize = input.length * input[0].length;
-        byte[][] tab = new byte[tabSize][4];
-        ArrayList<Integer> line = new ArrayList<Integer>(tabSize);
+        int width = input[0].length;
+        byte[][] tab = new byte[input.length * width][4];
         for (int i = 0 ; i < input.length ; ++i){
-            for (int j = 0 ; j < input[i].length ; ++j){
-                line.add(input[i][j]);
-            }
-        }
-        int [] line1 = new int[tabSize];
-        for (int i = 0 ; i < tabSize ; ++i){
-            line1 [i] = line.get(i);
-        }
-        for (int i = 0 ; i < tabSize ; ++i){
-            for (int j = 0 ; j < 4 ; ++j){
-                int index = j+1;
-                if (index == 4){
-                    index = 0;
-                }
-                tab [i][j] = ArrayUtils.fromInt(line1[i])[index];
+            for (int j = 0 ; j < width ; ++j){
+                int argb = input[i][j];
+                byte [] pixel = tab[i*width + j];
+                pixel[0] = (byte) (argb >>> 16);
+                pixel[1] = (byte) (argb >>> 8);
+                pixel[2] = (byte) argb;
+                pixel[3] = (byte) (argb >>> 24);
             }
         }
 
@@ -299,27 +292,142 @@ public final class ArrayUtils {
         assert (height > 0)&&(width > 0);
 
         int [][] tab = new int[height][width];
-        int [] line = new int[input.length];
-        for (int i = 0 ; i < input.length ; ++i){
-            byte[] aRGB = new byte[4];
-            aRGB[0] = input[i][3];
-            aRGB[1] = input[i][0];
-            aRGB[2] = input[i][1];
-            aRGB[3] = input[i][2];
-            input[i] = aRGB;
-        }
-        for (int i = 0 ; i < input.length ; ++i){
-            line[i] = ArrayUtils.toInt(input[i]);
-        }
         for (int i = 0 ; i < height ; ++i){
             for (int j = 0 ; j < width ; ++j){
-                tab [i][j] = line[(i*width)+j];
+                byte [] pixel = input[i*width + j];
+                tab [i][j] = (pixel[3] & 0xFF) << 24 |
+                        (pixel[0] & 0xFF) << 16 |
+                        (pixel[1] & 0xFF) << 8 |
+                        (pixel[2] & 0xFF);
             }
         }
 
         return tab;
     }
 
+    // ==================================================================================
+    // ============================ BULK CONVERSION METHODS =============================
+    // ==================================================================================
+
+    /**
+     * Number of pixels from which the 2-dim conversions are split in row chunks
+     * and run in parallel when asked to
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 18;
+
+    /**
+     * Convert ARGB packed pixels to RGBA packed pixels.
+     * The source and the destination can be the same array (in place conversion).
+     * @param src (int[]) - ARGB packed pixels
+     * @param srcPos (int) - Index of the first pixel to convert
+     * @param dst (int[]) - Array where to store the RGBA packed pixels
+     * @param dstPos (int) - Index in dst of the first converted pixel
+     * @param length (int) - Number of pixels to convert
+     * @throws AssertionError if one of the arrays is null or the indices are invalid
+     */
+    public static void argbToRgba(int[] src, int srcPos, int[] dst, int dstPos, int length){
+        assert (src != null) && (dst != null);
+        assert (srcPos >= 0) && (dstPos >= 0) && (length >= 0);
+        assert (srcPos + length <= src.length) && (dstPos + length <= dst.length);
+
+        long start = QOIStatistics.start();
+        PixelKernels.argbToRgba(src, srcPos, dst, dstPos, length);
+        if (QOIStatistics.ENABLED)
+            QOIStatistics.time(QOIStatistics.Phase.SWIZZLE, start);
+    }
+
+    /**
+     * Convert RGBA packed pixels to ARGB packed pixels.
+     * The source and the destination can be the same array (in place conversion).
+     * @param src (int[]) - RGBA packed pixels
+     * @param srcPos (int) - Index of the first pixel to convert
+     * @param dst (int[]) - Array where to store the ARGB packed pixels
+     * @param dstPos (int) - Index in dst of the first converted pixel
+     * @param length (int) - Number of pixels to convert
+     * @throws AssertionError if one of the arrays is null or the indices are invalid
+     */
+    public static void rgbaToArgb(int[] src, int srcPos, int[] dst, int dstPos, int length){
+        assert (src != null) && (dst != null);
+        assert (srcPos >= 0) && (dstPos >= 0) && (length >= 0);
+        assert (srcPos + length <= src.length) && (dstPos + length <= dst.length);
+
+        long start = QOIStatistics.start();
+        PixelKernels.rgbaToArgb(src, srcPos, dst, dstPos, length);
+        if (QOIStatistics.ENABLED)
+            QOIStatistics.time(QOIStatistics.Phase.SWIZZLE, start);
+    }
+
+    /**
+     * Convert an image of ARGB pixels stored row by row to RGBA packed pixels
+     * stored in a preallocated array, without padding between the rows
+     * @param input (int[][]) - ARGB pixels, the first dimension is the height
+     * @param dst (int[]) - Array where to store the RGBA packed pixels
+     * @param dstPos (int) - Index in dst of the first pixel of the image
+     * @param parallel (boolean) - true to convert chunks of rows in parallel (large images only)
+     * @throws AssertionError if one of the arrays is null, the rows don't have the same length
+     * or dst is too small
+     */
+    public static void argbToRgba(int[][] input, int[] dst, int dstPos, boolean parallel){
+        assert (input != null) && (dst != null);
+        assert input.length > 0;
+        int width = input[0].length;
+        for (int i = 0 ; i < input.length ; ++i){
+            assert (input[i] != null) && (input[i].length == width);
+        }
+        assert (dstPos >= 0) && ((long) dstPos + (long) width * input.length <= dst.length);
+
+        ArrayUtils.forEachRowChunk(input.length, width, parallel,
+                i -> ArrayUtils.argbToRgba(input[i], 0, dst, dstPos + i * width, width));
+    }
+
+    /**
+     * Convert RGBA packed pixels stored without padding to a preallocated
+     * image of ARGB pixels stored row by row
+     * @param src (int[]) - RGBA packed pixels
+     * @param srcPos (int) - Index in src of the first pixel of the image
+     * @param output (int[][]) - Image where to store the ARGB pixels, the first dimension is the height
+     * @param parallel (boolean) - true to convert chunks of rows in parallel (large images only)
+     * @throws AssertionError if one of the arrays is null, the rows don't have the same length
+     * or src is too small
+     */
+    public static void rgbaToArgb(int[] src, int srcPos, int[][] output, boolean parallel){
+        assert (src != null) && (output != null);
+        assert output.length > 0;
+        int width = output[0].length;
+        for (int i = 0 ; i < output.length ; ++i){
+            assert (output[i] != null) && (output[i].length == width);
+        }
+        assert (srcPos >= 0) && ((long) srcPos + (long) width * output.length <= src.length);
+
+        ArrayUtils.forEachRowChunk(output.length, width, parallel,
+                i -> ArrayUtils.rgbaToArgb(src, srcPos + i * width, output[i], 0, width));
+    }
+
+    /**
+     * Apply a conversion to every row of an image, in parallel chunks of rows
+     * if asked to and if the image is large enough to pay for it
+     * @param height (int) - Number of rows
+     * @param width (int) - Number of pixels per row
+     * @param parallel (boolean) - true to allow the parallel conversion
+     * @param row (IntConsumer) - Conversion of the row at the given index
+     */
+    private static void forEachRowChunk(int height, int width, boolean parallel, IntConsumer row){
+        if (!parallel || ((long) height * width < PARALLEL_THRESHOLD)){
+            for (int i = 0 ; i < height ; ++i){
+                row.accept(i);
+            }
+            return;
+        }
+        int rowsPerChunk = Math.max(1, PARALLEL_THRESHOLD / 4 / Math.max(1, width));
+        int chunks = (height + rowsPerChunk - 1) / rowsPerChunk;
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            int end = Math.min(height, (c + 1) * rowsPerChunk);
+            for (int i = c * rowsPerChunk ; i < end ; ++i){
+                row.accept(i);
+            }
+        });
+    }
+
     /**
      * Add a byte array to an Arraylist of bytes.
      * @param tab (byte[]) - byte array
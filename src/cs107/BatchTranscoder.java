@@ -0,0 +1,181 @@
+package cs107;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Converts a whole directory tree between "PNG" and "Quite Ok Image" :
+ * every ".png" file is encoded to ".qoi" (strip by strip, See StripTranscoder) and every ".qoi" file
+ * is decoded to ".png", the relative paths being kept in the destination directory.
+ * When the destination directory is inside the source directory, its files are not converted again.
+ * Each file runs read, decode, encode and write on a bounded pool of workers;
+ * the directory walk blocks when enough files are already waiting (backpressure).
+ * A file that fails, or a file or directory that cannot be read during the walk,
+ * is reported, counted as a failure and skipped : the other files are still converted.
+ * A converted file only appears in the destination once complete, a failure leaves no partial file behind.
+ * @apiNote Usage : java -cp out cs107.BatchTranscoder source destination [parallelism] [queue depth]
+ */
+public final class BatchTranscoder {
+
+    /**
+     * Result of a batch conversion
+     * @param files (long) - Number of converted files
+     * @param failures (long) - Number of files that could not be converted or walked
+     * @param bytesRead (long) - Total size of the converted source files (the failed ones excluded)
+     * @param bytesWritten (long) - Total size of the written files
+     * @param nanos (long) - Duration of the conversion
+     */
+    public record Summary(long files, long failures, long bytesRead, long bytesWritten, long nanos){
+
+        @Override
+        public String toString() {
+            var seconds = nanos / 1e9;
+            return String.format(Locale.ROOT,
+                    "%d files converted, %d failures, %.1f MB read, %.1f MB written in %.2f s (%.1f files/s, %.1f MB/s)",
+                    files, failures, bytesRead / 1e6, bytesWritten / 1e6, seconds,
+                    files / seconds, bytesRead / 1e6 / seconds);
+        }
+    }
+
+    // Hide default constructor
+    private BatchTranscoder(){}
+
+    /**
+     * Convert the directory tree given on the command line and print a summary
+     * @param args (String[]) - Source directory, destination directory, parallelism and queue depth
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2){
+            System.err.println("Usage : BatchTranscoder source destination [parallelism] [queue depth]");
+            return;
+        }
+        var parallelism = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        var queueDepth  = args.length > 3 ? Integer.parseInt(args[3]) : 2 * parallelism;
+        System.out.println(transcode(Path.of(args[0]), Path.of(args[1]), parallelism, queueDepth));
+    }
+
+    /**
+     * Convert every ".png" and ".qoi" file of a directory tree
+     * @param source (Path) - Directory to convert
+     * @param destination (Path) - Directory where to write the converted files
+     * @param parallelism (int) - Number of files converted at the same time
+     * @param queueDepth (int) - Number of files waiting for a worker before the walk blocks
+     * @return (Summary) - Result of the conversion
+     * @throws AssertionError if one of the paths is null or parallelism / queueDepth are invalid
+     * @throws IOException if the source directory cannot be walked
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public static Summary transcode(Path source, Path destination, int parallelism, int queueDepth)
+            throws IOException, InterruptedException {
+        assert (source != null) && (destination != null);
+        assert (parallelism > 0) && (queueDepth >= 0);
+
+        var files        = new AtomicLong();
+        var failures     = new AtomicLong();
+        var bytesRead    = new AtomicLong();
+        var bytesWritten = new AtomicLong();
+        var slots        = new Semaphore(parallelism + queueDepth);
+        var output       = destination.toAbsolutePath().normalize();
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+        var start = System.nanoTime();
+
+        try {
+            Files.walkFileTree(source, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes){
+                    return directory.toAbsolutePath().normalize().startsWith(output)
+                            ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes){
+                    var target = attributes.isRegularFile() ? target(source, destination, file) : null;
+                    if (target == null)
+                        return FileVisitResult.CONTINUE;
+                    try {
+                        slots.acquire();
+                    } catch (InterruptedException e){
+                        Thread.currentThread().interrupt();
+                        return FileVisitResult.TERMINATE;
+                    }
+                    workers.execute(() -> {
+                        try {
+                            var size = Files.size(file);
+                            convert(file, target);
+                            bytesRead.addAndGet(size);
+                            bytesWritten.addAndGet(Files.size(target));
+                            files.incrementAndGet();
+                        } catch (IOException | RuntimeException | AssertionError e){
+                            failures.incrementAndGet();
+                            System.err.printf("== FAILURE : '%s' : %s%n", file, e);
+                        } finally {
+                            slots.release();
+                        }
+                    });
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                    // An unreadable or vanished file or directory of the tree is skipped, not the source itself
+                    if (file.equals(source))
+                        throw e;
+                    failures.incrementAndGet();
+                    System.err.printf("== FAILURE : '%s' : %s%n", file, e);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } finally {
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        return new Summary(files.get(), failures.get(), bytesRead.get(), bytesWritten.get(), System.nanoTime() - start);
+    }
+
+    // ============================================================================================
+
+    private static Path target(Path source, Path destination, Path file){
+        var name = file.getFileName().toString();
+        var lower = name.toLowerCase(Locale.ROOT);
+        var extension = lower.endsWith(".png") ? ".qoi" : lower.endsWith(".qoi") ? ".png" : null;
+        if (extension == null)
+            return null;
+        var relative = source.relativize(file.resolveSibling(name.substring(0, name.length() - 4) + extension));
+        return destination.resolve(relative);
+    }
+
+    private static void convert(Path file, Path target) throws IOException {
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        // Written next to the target and moved into place once complete, a failure leaves no partial file
+        var partial = target.resolveSibling(target.getFileName() + ".part");
+        try {
+            if (target.getFileName().toString().endsWith(".qoi")){
+                try (var output = FileChannel.open(partial, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+                    StripTranscoder.transcode(file, output);
+                }
+            } else {
+                Helper.writeImage(partial, QOIDecoder.decodeBufferedImage(Helper.map(file.toString())));
+            }
+            Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+    }
+
+}
@@ -1,6 +1,11 @@
 package cs107;
 
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
+import java.util.stream.IntStream;
 
 /**
  * Utility class used to simulate the Unix command "diff"
@@ -52,6 +57,212 @@ public final class Diff {
         diff(b1, b2);
     }
 
+    // ============================================================================================
+    // ==================================== VERIFICATION API ======================================
+    // ============================================================================================
+
+    /**
+     * Number of bytes of each file compared by one task of Diff::compare
+     */
+    private static final long CHUNK_SIZE = 1L << 26;
+
+    /**
+     * Number of rows of the images compared by one task of Diff::comparePixels
+     */
+    private static final int BAND_HEIGHT = 64;
+
+    /**
+     * Byte level comparison of two files
+     * @param size1 (long) - Size of the first file
+     * @param size2 (long) - Size of the second file
+     * @param first (long) - Index of the first differing byte, -1 if the common part of the files is the same
+     * @param count (long) - Number of differing bytes in the common part of the files
+     */
+    public record Mismatches(long size1, long size2, long first, long count){
+
+        /**
+         * @return (boolean) - true if both files have the same content
+         */
+        public boolean identical(){
+            return (size1 == size2) && (count == 0);
+        }
+
+        /**
+         * @return (long) - Index of the first differing byte, the size of the shorter file when one file
+         * is the beginning of the other (truncated or extended copy), -1 if both files have the same content
+         */
+        public long firstDifference(){
+            if (first >= 0)
+                return first;
+            return (size1 != size2) ? Math.min(size1, size2) : -1;
+        }
+    }
+
+    /**
+     * Pixel level comparison of two images
+     * @param pixels (long) - Number of pixels of each image
+     * @param mismatches (long) - Number of pixels that differ in at least one channel
+     * @param maxDelta (int) - Largest difference of a channel between two pixels
+     * @param psnr (double) - Peak signal-to-noise ratio in dB over the 4 channels, infinite if the images are the same
+     */
+    public record PixelStats(long pixels, long mismatches, int maxDelta, double psnr){}
+
+    /**
+     * Compare two files byte by byte without reading them in the heap.
+     * The files are memory mapped and compared in parallel chunks with ByteBuffer::mismatch,
+     * which compares whole vectors of bytes at a time
+     * @param file_1 (Path) - Path of the first file
+     * @param file_2 (Path) - Path of the second file
+     * @return (Mismatches) - Result of the comparison
+     * @throws AssertionError if one of the paths is null
+     * @throws IOException if one of the files cannot be read
+     */
+    public static Mismatches compare(Path file_1, Path file_2) throws IOException {
+        assert (file_1 != null) && (file_2 != null);
+
+        try (var c1 = FileChannel.open(file_1, StandardOpenOption.READ);
+             var c2 = FileChannel.open(file_2, StandardOpenOption.READ)){
+            long size1 = c1.size();
+            long size2 = c2.size();
+            long common = Math.min(size1, size2);
+            int chunks = (int) ((common + CHUNK_SIZE - 1) / CHUNK_SIZE);
+            long [] first = new long[chunks];
+            long [] count = new long[chunks];
+            IOException [] error = new IOException[1];
+            IntStream.range(0, chunks).parallel().forEach(i -> {
+                long start = i * CHUNK_SIZE;
+                long length = Math.min(CHUNK_SIZE, common - start);
+                first[i] = -1;
+                try {
+                    var b1 = c1.map(FileChannel.MapMode.READ_ONLY, start, length);
+                    var b2 = c2.map(FileChannel.MapMode.READ_ONLY, start, length);
+                    int position = 0;
+                    int mismatch;
+                    while ((mismatch = b1.mismatch(b2)) >= 0){
+                        if (first[i] < 0)
+                            first[i] = start + position + mismatch;
+                        ++count[i];
+                        position += mismatch + 1;
+                        b1.position(position);
+                        b2.position(position);
+                    }
+                } catch (IOException e){
+                    synchronized (error){
+                        error[0] = e;
+                    }
+                }
+            });
+            if (error[0] != null)
+                throw error[0];
+
+            long firstMismatch = -1;
+            long total = 0;
+            for (int i = 0 ; i < chunks ; ++i){
+                if ((firstMismatch < 0) && (first[i] >= 0))
+                    firstMismatch = first[i];
+                total += count[i];
+            }
+            return new Mismatches(size1, size2, firstMismatch, total);
+        }
+    }
+
+    /**
+     * Compare two images pixel by pixel, whatever the layout of their pixels, in parallel bands of rows
+     * @param image_1 (Helper.PixelImage) - First image
+     * @param image_2 (Helper.PixelImage) - Second image, of the same size
+     * @return (PixelStats) - Result of the comparison
+     * @throws AssertionError if one of the images is null or they do not have the same size
+     */
+    public static PixelStats comparePixels(Helper.PixelImage image_1, Helper.PixelImage image_2){
+        assert (image_1 != null) && (image_2 != null);
+        assert (image_1.width() == image_2.width()) && (image_1.height() == image_2.height());
+
+        int width = image_1.width();
+        int height = image_1.height();
+        int bands = (height + BAND_HEIGHT - 1) / BAND_HEIGHT;
+        long [] mismatches = new long[bands];
+        long [] squares = new long[bands];
+        int [] maxDelta = new int[bands];
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            int [] row1 = new int[width];
+            int [] row2 = new int[width];
+            for (int y = band * BAND_HEIGHT ; y < Math.min(height, (band + 1) * BAND_HEIGHT) ; ++y){
+                rgbaRow(image_1, y, row1);
+                rgbaRow(image_2, y, row2);
+                int x = 0;
+                while ((x = mismatch(row1, row2, x)) >= 0){
+                    ++mismatches[band];
+                    for (int shift = 0 ; shift < 32 ; shift += 8){
+                        int delta = Math.abs((row1[x] >>> shift & 0xFF) - (row2[x] >>> shift & 0xFF));
+                        squares[band] += delta * delta;
+                        maxDelta[band] = Math.max(maxDelta[band], delta);
+                    }
+                    ++x;
+                }
+            }
+        });
+
+        long pixels = (long) width * height;
+        long mismatched = 0;
+        long square = 0;
+        int max = 0;
+        for (int i = 0 ; i < bands ; ++i){
+            mismatched += mismatches[i];
+            square += squares[i];
+            max = Math.max(max, maxDelta[i]);
+        }
+        double mse = (double) square / (pixels * 4);
+        double psnr = (square == 0) ? Double.POSITIVE_INFINITY : 10 * Math.log10(255.0 * 255.0 / mse);
+        return new PixelStats(pixels, mismatched, max, psnr);
+    }
+
+    /**
+     * Check that two files are the same and print a summary in the Terminal,
+     * without reading the files in the heap (See Diff::compare)
+     * @param file_1 (String) - Path of the first file
+     * @param file_2 (String) - Path of the second file
+     * @param pixels (boolean) - true to also decode both files ("QOI" or "PNG", ...) and compare their pixels
+     * @return (boolean) - true if both files have the same content
+     * @throws AssertionError if one of the paths is null
+     */
+    public static boolean verify(String file_1, String file_2, boolean pixels){
+        assert file_1 != null;
+        assert file_2 != null;
+
+        Mismatches result;
+        try {
+            result = compare(Path.of(file_1), Path.of(file_2));
+        } catch (IOException e){
+            return Helper.fail("An error occurred while trying to compare \"%s\" and \"%s\"%n", file_1, file_2);
+        }
+        System.out.println("========================================= VERIFY =========================================");
+        System.out.printf("== File 1 : '%s', size = %d bytes %n", file_1, result.size1());
+        System.out.printf("== File 2 : '%s', size = %d bytes %n", file_2, result.size2());
+        if (result.identical())
+            System.out.println("== The two inputs have the same content");
+        else {
+            if (result.size1() != result.size2())
+                System.out.printf("== WARNING : The two inputs have different sizes (%d and %d bytes)%n",
+                        result.size1(), result.size2());
+            System.out.printf("== First mismatch at [%06X], %d mismatching bytes in the %d common bytes%n",
+                    result.firstDifference(), result.count(), Math.min(result.size1(), result.size2()));
+        }
+        if (pixels){
+            var image_1 = readPixels(file_1);
+            var image_2 = readPixels(file_2);
+            if ((image_1.width() != image_2.width()) || (image_1.height() != image_2.height())){
+                System.out.printf("== Pixels : the images have different sizes (%d x %d and %d x %d)%n",
+                        image_1.width(), image_1.height(), image_2.width(), image_2.height());
+            } else {
+                var stats = comparePixels(image_1, image_2);
+                System.out.printf("== Pixels : %d / %d mismatching, max channel delta = %d, PSNR = %.2f dB%n",
+                        stats.mismatches(), stats.pixels(), stats.maxDelta(), stats.psnr());
+            }
+        }
+        showEnd();
+        return result.identical();
+    }
+
     // ============================================================================================
 
 
@@ -83,6 +294,25 @@ public final class Diff {
         }
     }
 
+    private static Helper.PixelImage readPixels(String path){
+        if (path.endsWith(".qoi"))
+            return QOIDecoder.decodeQoiImage(Helper.map(path));
+        return Helper.readPixelImage(path);
+    }
+
+    private static void rgbaRow(Helper.PixelImage image, int y, int[] row){
+        int start = y * image.stride();
+        if (image.format() == Helper.PixelFormat.RGBA)
+            System.arraycopy(image.data(), start, row, 0, row.length);
+        else
+            ArrayUtils.argbToRgba(image.data(), start, row, 0, row.length);
+    }
+
+    private static int mismatch(int[] row1, int[] row2, int from){
+        int mismatch = Arrays.mismatch(row1, from, row1.length, row2, from, row2.length);
+        return (mismatch < 0) ? -1 : from + mismatch;
+    }
+
     private static void showEnd(){
         System.out.println("========================================= END DIFF =======================================");
     }
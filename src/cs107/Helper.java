@@ -2,10 +2,17 @@ package cs107;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 
 /**
@@ -22,6 +29,10 @@ public final class Helper {
 
     private static final String res_folder = "res";
 
+    private static final OpenOption[] WRITE_OPTIONS = {
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE
+    };
+
     static {
         var file = new File(res_folder);
         if(file.exists()){
@@ -61,6 +72,111 @@ public final class Helper {
         }
     }
 
+    /**
+     * Layout of a pixel packed in an integer
+     */
+    public enum PixelFormat {
+        /** Red in the most significant byte, alpha in the least significant byte */
+        RGBA,
+        /** Alpha in the most significant byte, blue in the least significant byte */
+        ARGB
+    }
+
+    /**
+     * Record to store all the information of a given image in one contiguous array
+     * @param data (int[]) - packed pixels, row after row
+     * @param width (int) - width of the image
+     * @param height (int) - height of the image
+     * @param stride (int) - distance in data between the first pixels of two consecutive rows
+     * @param format (PixelFormat) - layout of the packed pixels
+     * @param channels (byte) - number of channels
+     * @param color_space (byte) - color space
+     */
+    public record PixelImage(int[] data, int width, int height, int stride, PixelFormat format,
+                             byte channels, byte color_space){
+
+        public PixelImage {
+            assert data != null;
+            assert format != null;
+            assert (width > 0) && (height > 0) && (stride >= width);
+            assert (long) stride * (height - 1) + width <= data.length;
+        }
+
+        /**
+         * Create an image whose rows are stored without padding (stride == width)
+         * @param data (int[]) - packed pixels, row after row
+         * @param width (int) - width of the image
+         * @param height (int) - height of the image
+         * @param format (PixelFormat) - layout of the packed pixels
+         * @param channels (byte) - number of channels
+         * @param color_space (byte) - color space
+         */
+        public PixelImage(int[] data, int width, int height, PixelFormat format, byte channels, byte color_space){
+            this(data, width, height, width, format, channels, color_space);
+        }
+
+        /**
+         * Flatten an image whose pixels are stored in a 2-dim array
+         * @param image (Image) - The image to flatten
+         * @return (PixelImage) - The same image stored as ARGB packed pixels in one array
+         */
+        public static PixelImage fromImage(Image image){
+            assert image != null;
+            var height = image.data.length;
+            var width  = image.data[0].length;
+            var data   = new int[width * height];
+            for (var x = 0; x < height; ++x){
+                System.arraycopy(image.data[x], 0, data, x * width, width);
+            }
+            return new PixelImage(data, width, height, PixelFormat.ARGB, image.channels, image.color_space);
+        }
+
+        /**
+         * Copy this image to the 2-dim array representation
+         * @return (Image) - The same image stored as ARGB pixels in a 2-dim array
+         */
+        public Image toImage(){
+            var array = new int[height][width];
+            if ((format == PixelFormat.RGBA) && (stride == width)){
+                ArrayUtils.rgbaToArgb(data, 0, array, true);
+            } else {
+                for (var x = 0; x < height; ++x){
+                    if (format == PixelFormat.ARGB)
+                        System.arraycopy(data, x * stride, array[x], 0, width);
+                    else
+                        ArrayUtils.rgbaToArgb(data, x * stride, array[x], 0, width);
+                }
+            }
+            return new Image(array, channels, color_space);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof PixelImage im){
+                if ((width != im.width) || (height != im.height) || (format != im.format)
+                        || (channels != im.channels) || (color_space != im.color_space))
+                    return false;
+                for (var x = 0; x < height; ++x){
+                    if (!Arrays.equals(data, x * stride, x * stride + width, im.data, x * im.stride, x * im.stride + width))
+                        return false;
+                }
+                return true;
+            }else
+                return false;
+        }
+
+        @Override
+        public int hashCode() {
+            var hash = 31 * width + height;
+            for (var x = 0; x < height; ++x){
+                for (var y = 0; y < width; ++y){
+                    hash = 31 * hash + data[x * stride + y];
+                }
+            }
+            return hash;
+        }
+    }
+
     // ==================================================================================
     // ========================== IMAGE MANIPULATION METHODS ============================
     // ==================================================================================
@@ -92,22 +208,84 @@ public final class Helper {
      * @return (Image) - The corresponding Image
      */
     public static Image readImage(String path) {
+        return readPixelImage(path).toImage();
+    }
+
+    /**
+     * Read and decode an image from the disk, without going through the 2-dim array representation.
+     * The image can be one of the standard formats (png, jpeg ...)
+     * @param path (String) - Relative or Absolute Path to the image
+     * @return (PixelImage) - The corresponding image, stored as ARGB packed pixels without padding
+     */
+    public static PixelImage readPixelImage(String path) {
+        var event = new QOIEvents.Read();
+        event.begin();
         try{
-            var io = ImageIO.read(new File(path));
-            var width  = io.getWidth();
-            var height = io.getHeight();
-            var array = new int[height][width];
-            for(var x = 0; x < height;++x){
-                for(var y = 0 ;y < width; ++y){
-                    array[x][y] = io.getRGB(y, x);
-                }
-            }
+            var file = new File(path);
+            var io = ImageIO.read(file);
+            if (io == null)
+                return fail("No reader for the format of : \"%s\"%n", path);
             var nbrChannels = (byte) (io.getColorModel().hasAlpha() ? 4 : 3);
-            return new Image(array, nbrChannels, (byte) 0);
+            var image = new PixelImage(pixels(io), io.getWidth(), io.getHeight(), PixelFormat.ARGB, nbrChannels, (byte) 0);
+            event.commit(image.width(), image.height(), nbrChannels, file.length(), 4L * image.width() * image.height());
+            return image;
         }catch (IOException e){
             return fail("An error occurred while trying to read from : \"%s\"%n", path);
         }
+    }
 
+    /**
+     * Extract the pixels of an image. The rasters of the types produced by the PNG reader
+     * are read directly, the other ones are converted by BufferedImage::getRGB
+     * @param io (BufferedImage) - The image
+     * @return (int[]) - ARGB packed pixels, row after row
+     */
+    static int[] pixels(BufferedImage io){
+        var width  = io.getWidth();
+        var height = io.getHeight();
+        var raster = io.getRaster();
+        var model  = raster.getSampleModel();
+        var direct = (raster.getParent() == null) && (raster.getSampleModelTranslateX() == 0)
+                && (raster.getSampleModelTranslateY() == 0) && (raster.getDataBuffer().getNumBanks() == 1);
+        var data = new int[width * height];
+
+        if (direct && (model instanceof ComponentSampleModel components) && (components.getScanlineStride() == width * components.getPixelStride())
+                && (raster.getDataBuffer() instanceof DataBufferByte buffer) && (buffer.getOffset() == 0)){
+            var bytes = buffer.getData();
+            switch (io.getType()){
+                case BufferedImage.TYPE_4BYTE_ABGR -> {
+                    for (int i = 0, j = 0; i < data.length; ++i, j += 4){
+                        data[i] = (bytes[j] & 0xFF) << 24 | (bytes[j+3] & 0xFF) << 16 | (bytes[j+2] & 0xFF) << 8 | (bytes[j+1] & 0xFF);
+                    }
+                    return data;
+                }
+                case BufferedImage.TYPE_3BYTE_BGR -> {
+                    for (int i = 0, j = 0; i < data.length; ++i, j += 3){
+                        data[i] = 0xFF_00_00_00 | (bytes[j+2] & 0xFF) << 16 | (bytes[j+1] & 0xFF) << 8 | (bytes[j] & 0xFF);
+                    }
+                    return data;
+                }
+                default -> {}
+            }
+        }
+        if (direct && (model instanceof SinglePixelPackedSampleModel packed) && (packed.getScanlineStride() == width)
+                && (raster.getDataBuffer() instanceof DataBufferInt buffer) && (buffer.getOffset() == 0)){
+            switch (io.getType()){
+                case BufferedImage.TYPE_INT_ARGB -> {
+                    System.arraycopy(buffer.getData(), 0, data, 0, data.length);
+                    return data;
+                }
+                case BufferedImage.TYPE_INT_RGB -> {
+                    var ints = buffer.getData();
+                    for (var i = 0; i < data.length; ++i){
+                        data[i] = 0xFF_00_00_00 | ints[i];
+                    }
+                    return data;
+                }
+                default -> {}
+            }
+        }
+        return io.getRGB(0, 0, width, height, data, 0, width);
     }
 
     /**
@@ -116,22 +294,61 @@ public final class Helper {
      * @param image (Image) - Image to store
      */
     public static void writeImage(String path, Image image) {
-        int type = switch (image.channels){
-            case 3 -> BufferedImage.TYPE_3BYTE_BGR;
-            case 4 -> BufferedImage.TYPE_4BYTE_ABGR;
+        writeImage(Path.of(res_folder + File.separator + path), image);
+    }
+
+    /**
+     * Write an image as "PNG" in the disk, exactly at the given path
+     * @param path (Path) - Relative or Absolute path to the image
+     * @param image (Image) - Image to store
+     */
+    public static void writeImage(Path path, Image image) {
+        var height = image.data.length;
+        var width  = image.data[0].length;
+        BufferedImage buffer = switch (image.channels){
+            case 3 -> new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+            case 4 -> new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
             default -> fail("Cannot write this image, image.channels() == %d", image.channels);
         };
-        var buffer = new BufferedImage(image.data[0].length, image.data.length, type);
-        for(var x = 0; x < buffer.getHeight(); ++x){
-            for(var y = 0 ; y < buffer.getWidth(); ++y){
-                buffer.setRGB(y, x, image.data[x][y]);
+        // Fill the raster directly, the pixels are stored row after row without padding
+        var bytes = ((DataBufferByte) buffer.getRaster().getDataBuffer()).getData();
+        var j = 0;
+        for (var row : image.data){
+            for (var pixel : row){
+                if (image.channels == 4)
+                    bytes[j++] = (byte) (pixel >>> 24);
+                bytes[j++] = (byte) pixel;
+                bytes[j++] = (byte) (pixel >>> 8);
+                bytes[j++] = (byte) (pixel >>> 16);
             }
         }
-        var abs_path = res_folder + File.separator + path;
+        writeImage(path, buffer);
+    }
+
+    /**
+     * Write an image as "PNG" in the disk. This function writes to the folder called "res/"
+     * @param path (String) - Relative or Absolute path to the image
+     * @param image (BufferedImage) - Image to store
+     */
+    public static void writeImage(String path, BufferedImage image) {
+        writeImage(Path.of(res_folder + File.separator + path), image);
+    }
+
+    /**
+     * Write an image as "PNG" in the disk, exactly at the given path
+     * @param path (Path) - Relative or Absolute path to the image
+     * @param image (BufferedImage) - Image to store
+     */
+    public static void writeImage(Path path, BufferedImage image) {
+        var event = new QOIEvents.Write();
+        event.begin();
         try {
-            ImageIO.write(buffer, "png", new File(abs_path));
+            var file = path.toFile();
+            ImageIO.write(image, "png", file);
+            event.commit(image.getWidth(), image.getHeight(), image.getColorModel().getNumComponents(),
+                    4L * image.getWidth() * image.getHeight(), file.length());
         }catch (IOException e){
-            fail("An error occurred while trying to write to : \"%s\"%n", abs_path);
+            fail("An error occurred while trying to write to : \"%s\"%n", path);
         }
     }
 
@@ -145,10 +362,51 @@ public final class Helper {
      * @return (byte[]) - File content as stored in memory
      */
     public static byte[] read(String path) {
-        try(var input = new FileInputStream(path)){
-            return input.readAllBytes();
+        long start = QOIStatistics.start();
+        var event = new QOIEvents.FileRead();
+        event.begin();
+        try(var input = FileChannel.open(Path.of(path), StandardOpenOption.READ)){
+            var size = input.size();
+            if (size > Integer.MAX_VALUE - 8)
+                return fail("File too large to be read in memory : \"%s\"%n", path);
+            var content = new byte[(int) size];
+            var buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()){
+                if (input.read(buffer) < 0)
+                    break;
+            }
+            event.commit(buffer.position());
+            return buffer.hasRemaining() ? Arrays.copyOf(content, buffer.position()) : content;
         } catch (IOException e){
             return fail("An error occurred while trying to read from : \"%s\"%n", path);
+        } finally {
+            if (QOIStatistics.ENABLED)
+                QOIStatistics.time(QOIStatistics.Phase.IO, start);
+        }
+    }
+
+    /**
+     * Size of a file of the folder called "res/"
+     * @param path (String) - Path of the file in the folder
+     * @return (long) - Size of the file in bytes, 0 if it does not exist
+     */
+    static long size(String path) {
+        return new File(res_folder + File.separator + path).length();
+    }
+
+    /**
+     * Map a file stored in the disk in memory, without copying it in the heap
+     * @apiNote The file is only read when the buffer is accessed and has to be smaller than 2GB
+     * @param path (String) - Relative or Absolute path to the file
+     * @return (ByteBuffer) - Read only view of the file content
+     */
+    public static ByteBuffer map(String path) {
+        try(var input = FileChannel.open(Path.of(path), StandardOpenOption.READ)){
+            if (input.size() > Integer.MAX_VALUE)
+                return fail("File too large to be mapped : \"%s\"%n", path);
+            return input.map(FileChannel.MapMode.READ_ONLY, 0, input.size());
+        } catch (IOException e){
+            return fail("An error occurred while trying to map : \"%s\"%n", path);
         }
     }
 
@@ -159,12 +417,50 @@ public final class Helper {
      */
     public static void write(String path, byte[] content){
         var abs_path = res_folder + File.separator + path;
-        try(var output = new FileOutputStream(abs_path)){
-            for (var b : content){
-                output.write(b);
+        long start = QOIStatistics.start();
+        var event = new QOIEvents.FileWrite();
+        event.begin();
+        try(var output = FileChannel.open(Path.of(abs_path), WRITE_OPTIONS)){
+            var buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()){
+                output.write(buffer);
             }
+            event.commit(content.length);
         }catch (IOException e){
             fail("An error occurred while trying to write to : \"%s\"%n", abs_path);
+        } finally {
+            if (QOIStatistics.ENABLED)
+                QOIStatistics.time(QOIStatistics.Phase.IO, start);
+        }
+    }
+
+    /**
+     * Encode an image and write it as "QOI" in the disk. This function writes to the folder called "res/".
+     * The encoding is streamed to the file, it is never stored entirely in memory.
+     * @param path (String) - Relative or Absolute path to the file
+     * @param image (PixelImage) - Image to store
+     */
+    public static void writeQoi(String path, PixelImage image){
+        var abs_path = res_folder + File.separator + path;
+        try(var output = FileChannel.open(Path.of(abs_path), WRITE_OPTIONS)){
+            QOIEncoder.qoiFile(image, output);
+        }catch (IOException e){
+            fail("An error occurred while trying to write to : \"%s\"%n", abs_path);
+        }
+    }
+
+    /**
+     * Convert an image ("PNG", ...) to "QOI" strip by strip, without reading it entirely in memory.
+     * This function writes to the folder called "res/"
+     * @param input (String) - Relative or Absolute path to the image to convert
+     * @param path (String) - Relative or Absolute path to the "QOI" file
+     */
+    public static void transcodeToQoi(String input, String path){
+        var abs_path = res_folder + File.separator + path;
+        try(var output = FileChannel.open(Path.of(abs_path), WRITE_OPTIONS)){
+            StripTranscoder.transcode(Path.of(input), output);
+        }catch (IOException e){
+            fail("An error occurred while trying to convert \"%s\" to : \"%s\"%n", input, abs_path);
         }
     }
 
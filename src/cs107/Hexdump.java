@@ -69,6 +69,8 @@ public final class Hexdump {
     // Hide default constructor
     private Hexdump(){}
 
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
     private static String dump_1byte(int addr, byte[] b){
         var fmt = "%06X : %02X | %c |%n";
         return String.format(fmt, addr, b[addr], display_char(b[addr]));
@@ -174,6 +176,44 @@ public final class Hexdump {
     }
 
 
+    /**
+     * Append a number in hexadecimal form, with upper case digits
+     * @param line (StringBuilder) - Destination
+     * @param value (long) - Unsigned number to append
+     * @param digits (int) - Minimal number of digits, the number is padded with zeros
+     * @return (StringBuilder) - The destination
+     */
+    static StringBuilder append_hex(StringBuilder line, long value, int digits){
+        if (value >>> (4 * digits) != 0)
+            digits = (64 - Long.numberOfLeadingZeros(value) + 3) / 4;
+        for (int shift = 4 * (digits - 1) ; shift >= 0 ; shift -= 4){
+            line.append(HEX[(int) (value >>> shift) & 0xF]);
+        }
+        return line;
+    }
+
+    /**
+     * Append the address and the bytes of a line of the dump ("%06X : %02X %02X ... "),
+     * without the characters, the bytes columns being padded to a given number of bytes
+     * @param line (StringBuilder) - Destination
+     * @param addr (long) - Address of the first byte
+     * @param b (byte[]) - Array holding the bytes
+     * @param from (int) - Index of the first byte (inclusive)
+     * @param to (int) - Index of the last byte (exclusive)
+     * @param columns (int) - Number of bytes columns
+     * @return (StringBuilder) - The destination
+     */
+    static StringBuilder append_bytes(StringBuilder line, long addr, byte[] b, int from, int to, int columns){
+        append_hex(line, addr, 6).append(" : ");
+        for (int i = from ; i < to ; ++i){
+            append_hex(line, b[i] & 0xFF, 2).append(' ');
+        }
+        for (int i = to - from ; i < columns ; ++i){
+            line.append("   ");
+        }
+        return line;
+    }
+
     private static char display_char(byte c){
         return Character.isISOControl(c) ? '.' : (char) c;
     }
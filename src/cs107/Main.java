@@ -1,7 +1,41 @@
 package cs107;
 
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+
+import javax.management.JMException;
+import javax.management.JMX;
+import javax.management.ObjectName;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
 
 /**
  * Main entry point of the program.
@@ -40,6 +74,9 @@ public final class Main {
         your program
          */
 
+        // The statistics are only checked through their MXBean when they are enabled
+        // with -Dcs107.statistics=true (See testStatisticsMXBean), the other tests run either way
+
         // ========== Test ArrayUtils ==========
         assert testArrayAdd();
         assert testEquals();
@@ -53,6 +90,9 @@ public final class Main {
         assert testPartition();
         assert testImageToChannels();
         assert testChannelsToImage();
+        assert testBulkConversion();
+        assert testPixelKernels();
+        assert testPackedPrimitives();
 
         // ========== Test QOIEncoder ==========
         assert testQoiHeader();
@@ -63,6 +103,7 @@ public final class Main {
         assert testQoiOpLuma();
         assert testQoiOpRun();
         assert testEncodeData();
+        assert testEncodePackedData();
 
         // ========== Test QOIDecoder ==========
         assert testDecodeHeader();
@@ -72,6 +113,29 @@ public final class Main {
         assert testDecodeQoiOpLuma();
         assert testDecodeQoiOpRun();
         assert testDecodeData();
+        assert testDecodePackedData();
+        assert testDecodeBuffers();
+        assert testStreamDecoder();
+        assert testTruncatedStream();
+        assert testPixelImageRoundTrip();
+        assert testNioRoundTrip();
+        assert testStreamEncoder();
+        assert testBandedRoundTrip();
+        assert testParallelEncoding();
+        assert testParallelDecoding();
+        assert testCheckpointIndex();
+        assert testThumbnail();
+        assert testDecodeBufferedImage();
+        assert testReusableCodec();
+        assert testStatistics();
+        assert testStatisticsMXBean();
+        assert testCatalogue();
+        assert testDiffCompare();
+        assert testDisassembler();
+        assert testStripTranscoder();
+        assert testBatchTranscoder();
+        assert testRasterPixels();
+        assert testFlightRecorderEvents();
 
         System.out.println("All the tests passes. Congratulations");
 
@@ -91,12 +155,8 @@ public final class Main {
      * @param outputFile (String) - The path where to store the generated "Quite Ok Image"
      */
     public static void pngToQoi(String inputFile, String outputFile){
-        // Read a PNG file
-        var inputImage = Helper.readImage(inputFile);
-        // Encode the Image to QOI
-        var outputFileContent = QOIEncoder.qoiFile(inputImage);
-        // Write in binary mode the file content to 'output_file'
-        Helper.write(outputFile, outputFileContent);
+        // Read the PNG file strip by strip, encode each strip to QOI and stream it to 'output_file'
+        Helper.transcodeToQoi(inputFile, outputFile);
     }
 
     /**
@@ -105,12 +165,16 @@ public final class Main {
      * @param outputFile (String) - The path where to store the generated "PNG" Image
      */
     public static void qoiToPng(String inputFile, String outputFile){
-        // Read in binary mode the file 'input_file'
-        var inputFileContent = Helper.read(inputFile);
+        var event = new QOIEvents.Transcode();
+        event.begin();
+        // Map in memory the file 'input_file'
+        var inputFileContent = Helper.map(inputFile);
         // Decode the file using the 'QOI' decoder
-        var computedImage = QOIDecoder.decodeQoiFile(inputFileContent);
+        var computedImage = QOIDecoder.decodeBufferedImage(inputFileContent);
         // Write an image to 'output_file'
         Helper.writeImage(outputFile, computedImage);
+        event.commit(computedImage.getWidth(), computedImage.getHeight(), computedImage.getColorModel().getNumComponents(),
+                inputFileContent.capacity(), Helper.size(outputFile));
     }
 
     /**
@@ -242,6 +306,18 @@ public final class Main {
         return Arrays.deepEquals(output, input);
     }
 
+    @SuppressWarnings("unused")
+    private static boolean testBulkConversion(){
+        int[] rgba = new int[15];
+        ArrayUtils.argbToRgba(input, rgba, 0, true);
+        int[][] argb = new int[3][5];
+        ArrayUtils.rgbaToArgb(rgba, 0, argb, true);
+        int[] inPlace = {0x11223344, 0xAABBCCDD};
+        ArrayUtils.argbToRgba(inPlace, 0, inPlace, 0, inPlace.length);
+        return (rgba[0] == 0x00000100) && Arrays.deepEquals(argb, input)
+                && Arrays.equals(inPlace, new int[]{0x22334411, 0xBBCCDDAA});
+    }
+
     // ============================================================================================
     // ============================== QOIEncoder examples =========================================
     // ============================================================================================
@@ -310,6 +386,15 @@ public final class Main {
         return Arrays.equals(expected, encoding);
     }
 
+    @SuppressWarnings("unused")
+    private static boolean testEncodePackedData(){
+        int[] pixels = {0x000000FF, 0x000000FF, 0x000000FF, 0x00FF00FF, 0xEEECEEFF, 0x000000FF, 0x646464FF, 0x5A5A5A5A};
+        byte[] expected = {-62, 102, -115, -103, -76, 102, -2, 100, 100, 100, -1, 90, 90, 90, 90};
+        byte[] output = new byte[QOIEncoder.maxDataSize(pixels.length) + 2];
+        int length = QOIEncoder.encodeData(pixels, 0, pixels.length, output, 2);
+        return (length == expected.length) && Arrays.equals(expected, Arrays.copyOfRange(output, 2, 2 + length));
+    }
+
     // ============================================================================================
     // ============================== QOIDecoder examples =========================================
     // ============================================================================================
@@ -381,4 +466,856 @@ public final class Main {
         return Arrays.deepEquals(expected, QOIDecoder.decodeData(encoding, 4, 2));
     }
 
+    @SuppressWarnings("unused")
+    private static boolean testDecodePackedData(){
+        byte[] encoding = {-62, 102, -115, -103, -76, 102, -2, 100, 100, 100, -1, 90, 90, 90, 90};
+        int[] expected = {0x000000FF, 0x000000FF, 0x000000FF, 0x00FF00FF, 0xEEECEEFF, 0x000000FF, 0x646464FF, 0x5A5A5A5A};
+        int[] pixels = new int[expected.length];
+        int consumed = QOIDecoder.decodeData(encoding, 0, encoding.length, pixels, 0, pixels.length);
+        IntBuffer buffer = IntBuffer.allocate(expected.length);
+        QOIDecoder.decodeData(ByteBuffer.wrap(encoding), buffer);
+        return (consumed == encoding.length) && Arrays.equals(expected, pixels) && Arrays.equals(expected, buffer.array());
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean testDecodeBuffers(){
+        // Larger than a block of the decoder, with runs crossing the blocks
+        var image = syntheticImage(97, 61, Helper.PixelFormat.ARGB, i -> (i % 7 < 3) ? 0xFF102030 : 0x80000000 | i * 0x0F1E2D);
+        byte[] file = QOIEncoder.qoiFile(image);
+        int[] expected = QOIDecoder.decodeQoiImage(file).data();
+        int end = file.length - QOISpecification.QOI_EOF.length;
+
+        var direct = ByteBuffer.allocateDirect(end - QOISpecification.HEADER_SIZE);
+        direct.put(file, QOISpecification.HEADER_SIZE, direct.capacity()).flip();
+        var bytes = new byte[4 * expected.length];
+        QOIDecoder.decodeData(direct, ByteBuffer.wrap(bytes).asIntBuffer());
+        int[] pixels = new int[expected.length];
+        ByteBuffer.wrap(bytes).asIntBuffer().get(pixels);
+        if (!Arrays.equals(expected, pixels) || direct.hasRemaining())
+            return false;
+
+        // Every truncation of the data fails, whether the buffer is backed by an array or not
+        for (int length = end - 12 ; length < end ; ++length){
+            var data = ByteBuffer.wrap(file, QOISpecification.HEADER_SIZE, length - QOISpecification.HEADER_SIZE);
+            for (var buffer : new ByteBuffer[]{data.slice(), ByteBuffer.allocateDirect(data.remaining()).put(data).flip()}){
+                try {
+                    QOIDecoder.decodeData(buffer, IntBuffer.allocate(expected.length));
+                    return false;
+                } catch (BufferUnderflowException e){
+                    // Expected
+                }
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean testTruncatedStream(){
+        var image = syntheticImage(9, 7, Helper.PixelFormat.ARGB, i -> (i % 6 == 0) ? 0x80445566 : 0xFF000000 | (i * 29 % 13) * 0x0A0B0C);
+        byte[] file = QOIEncoder.qoiFile(image);
+        byte[] corrupted = file.clone();
+        corrupted[file.length - 1] = 2;
+        try {
+            if (!streamDecode(file, QOISpecification.HEADER_SIZE + 8).equals(QOIDecoder.decodeQoiImage(file)))
+                return false;
+        } catch (IOException e){
+            return false;
+        }
+        // Every truncation of the data or of the trailer, with a buffer refilled at each chunk or never refilled
+        for (int length = QOISpecification.HEADER_SIZE ; length < file.length ; ++length){
+            for (int bufferSize : new int[]{QOISpecification.HEADER_SIZE + 8, QOIStreamDecoder.DEFAULT_BUFFER_SIZE}){
+                try {
+                    streamDecode(Arrays.copyOf(file, length), bufferSize);
+                    return false;
+                } catch (EOFException e){
+                    // Expected
+                } catch (IOException e){
+                    return false;
+                }
+            }
+        }
+        try {
+            streamDecode(corrupted, QOIStreamDecoder.DEFAULT_BUFFER_SIZE);
+            return false;
+        } catch (EOFException e){
+            return false;
+        } catch (IOException e){
+            return true;
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean testPixelImageRoundTrip(){
+        // 3x2 ARGB image stored with a stride of 4 (one padding pixel per row)
+        int[] padded = {0xFF000000, 0xFF000000, 0x80FF0000, -1, 0xFF010203, 0xFF010203, 0xFF111213, -1};
+        var image = new Helper.PixelImage(padded, 3, 2, 4, Helper.PixelFormat.ARGB, QOISpecification.RGBA, QOISpecification.sRGB);
+        var decoded = QOIDecoder.decodeQoiImage(QOIEncoder.qoiFile(image));
+        return decoded.toImage().equals(image.toImage())
+                && Arrays.equals(QOIEncoder.qoiFile(image), QOIEncoder.qoiFile(decoded));
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean testNioRoundTrip(){
+        var image = syntheticImage(11, 6, Helper.PixelFormat.ARGB, i -> (i % 5 < 2) ? 0xFF304050 : 0x7F000000 | i * 0x050709);
+        byte[] expected = QOIEncoder.qoiFile(image);
+        var decoded = QOIDecoder.decodeQoiImage(expected);
+        int capacity = QOISpecification.HEADER_SIZE + QOIEncoder.maxDataSize(11 * 6) + QOISpecification.QOI_EOF.length;
+        try {
+            // Heap buffer, written and read from a position that is not 0
+            var heap = ByteBuffer.allocate(3 + capacity).position(3);
+            int written = QOIEncoder.qoiFile(image, heap);
+            heap.flip().position(3);
+            boolean heapPassed = (written == expected.length) && heap.equals(ByteBuffer.wrap(expected))
+                    && QOIDecoder.decodeQoiImage(heap).equals(decoded) && (heap.position() == 3);
+
+            // Heap buffer too small for the worst case, written row by row
+            var exact = ByteBuffer.allocate(expected.length);
+            heapPassed &= (QOIEncoder.qoiFile(image, exact) == expected.length) && Arrays.equals(exact.array(), expected);
+
+            // Channel, then a mapped view of the written file
+            var file = Files.createTempFile("nio", ".qoi");
+            try (var channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+                QOIEncoder.qoiFile(image, channel);
+            }
+            boolean channelPassed = Arrays.equals(Files.readAllBytes(file), expected)
+                    && QOIDecoder.decodeQoiImage(Helper.map(file.toString())).equals(decoded);
+
+            // Mapped region of the output file, truncated to the written size
+            try (var channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)){
+                written = QOIEncoder.qoiFile(image, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+                channel.truncate(written);
+            }
+            boolean mappedPassed = Arrays.equals(Files.readAllBytes(file), expected);
+            Files.delete(file);
+            return heapPassed && channelPassed && mappedPassed;
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean testStreamEncoder(){
+        int[] pixels = {0x000000FF, 0x000000FF, 0x000000FF, 0x00FF00FF, 0xEEECEEFF, 0x000000FF, 0x646464FF, 0x5A5A5A5A};
+        var image = new Helper.PixelImage(pixels, 4, 2, Helper.PixelFormat.RGBA, QOISpecification.RGBA, QOISpecification.sRGB);
+        var output = new ByteArrayOutputStream();
+        try (var encoder = new QOIStreamEncoder(output, 4, 2, QOISpecification.RGBA, QOISpecification.sRGB)){
+            encoder.writeRow(pixels, 0, Helper.PixelFormat.RGBA);
+            encoder.writeRow(pixels, 4, Helper.PixelFormat.RGBA);
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+        return Arrays.equals(QOIEncoder.qoiFile(image), output.toByteArray());
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean testStreamDecoder(){
+        byte[] file = {'q', 'o', 'i', 'f', 0, 0, 0, 4, 0, 0, 0, 2, 4, 0,
+                -62, 102, -115, -103, -76, 102, -2, 100, 100, 100, -1, 90, 90, 90, 90,
+                0, 0, 0, 0, 0, 0, 0, 1};
+        int[] expected = {0x000000FF, 0x000000FF, 0x000000FF, 0x00FF00FF, 0xEEECEEFF, 0x000000FF, 0x646464FF, 0x5A5A5A5A};
+        int[] pixels = new int[8];
+        try (var decoder = new QOIStreamDecoder(new ByteArrayInputStream(file))){
+            decoder.decode((y, row, offset, width) -> System.arraycopy(row, offset, pixels, y * width, width));
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+        return Arrays.equals(expected, pixels);
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean testBandedRoundTrip(){
+        var image = syntheticImage(7, 5, Helper.PixelFormat.RGBA, i -> (i % 3 == 0) ? 0x102030FF : 0x10000000 * (i % 4) + i);
+        byte[] banded = QOIEncoder.qoiBandedFile(image, 2);
+        return QOIDecoder.isBanded(banded) && !QOIDecoder.isBanded(QOIEncoder.qoiFile(image))
+                && QOIDecoder.decodeQoiBandedImage(banded).equals(image);
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean testParallelEncoding(){
+        var image = syntheticImage(6, 6, Helper.PixelFormat.ARGB, i -> (i % 5 == 0) ? 0xFF112233 : 0xFF000000 | (i % 3) * 0x010101);
+        byte[] file = QOIEncoder.qoiFileParallel(image, 2);
+        return QOIDecoder.decodeQoiFile(file).equals(image.toImage())
+                && Arrays.equals(QOIEncoder.qoiFileParallel(image, 6), QOIEncoder.qoiFile(image));
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean testParallelDecoding(){
+        var image = syntheticImage(16, 16, Helper.PixelFormat.ARGB, i -> (i % 7 == 0) ? 0x80112233 : 0xFF000000 | (i * 37 % 11) * 0x030507);
+        byte[] file = QOIEncoder.qoiFile(image);
+        var expected = QOIDecoder.decodeQoiImage(file);
+        var opaque = syntheticImage(64, 16, Helper.PixelFormat.ARGB, i -> 0xFF000000 | (i / 3 * 37 % 23) * 0x030507);
+        byte[] opaqueFile = QOIEncoder.qoiFile(opaque);
+        var opaqueExpected = QOIDecoder.decodeQoiImage(opaqueFile);
+        // Whatever the number of cores, with one or several waves and with the sequential fallback
+        for (int parallelism : new int[]{1, 2, 3, 64}){
+            for (int segmentPixels : new int[]{8, 40, 1 << 20}){
+                if (!QOIDecoder.decodeQoiImageParallel(file, segmentPixels, parallelism).equals(expected)
+                        || !QOIDecoder.decodeQoiImageParallel(opaqueFile, segmentPixels, parallelism).equals(opaqueExpected))
+                    return false;
+            }
+        }
+        return QOIDecoder.decodeQoiImageParallel(file, 40).equals(expected);
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean testCheckpointIndex(){
+        var image = syntheticImage(9, 7, Helper.PixelFormat.ARGB, i -> (i % 4 == 0) ? 0xFF445566 : 0xFF000000 | (i * 13 % 5) * 0x020406);
+        // Large enough to be read in several blocks, with runs crossing the rows
+        var large = syntheticImage(400, 300, Helper.PixelFormat.ARGB, i -> (i % 7 < 3) ? 0xFF808080 : 0xFF000000 | (i * 0x9E3779B1) >>> 8);
+        try {
+            var directory = Files.createTempDirectory("index");
+            var path = directory.resolve("image.qoi");
+            Files.write(path, QOIEncoder.qoiFile(image));
+            var largePath = directory.resolve("large.qoi");
+            Files.write(largePath, QOIEncoder.qoiFile(large));
+            var truncatedPath = directory.resolve("truncated.qoi");
+            var largeFile = Files.readAllBytes(largePath);
+            Files.write(truncatedPath, Arrays.copyOf(largeFile, largeFile.length / 2));
+            boolean passed;
+            try (var file = FileChannel.open(path); var largeFileChannel = FileChannel.open(largePath);
+                 var truncated = FileChannel.open(truncatedPath)){
+                var decoded = QOIDecoder.decodeQoiImage(Files.readAllBytes(path));
+                var index = QOIIndex.fromBytes(QOIIndex.build(file, 2).toBytes());
+
+                int[] region = new int[4 * 3];
+                for (int x = 0 ; x < 3 ; ++x){
+                    System.arraycopy(decoded.data(), (x + 3) * 9 + 2, region, x * 4, 4);
+                }
+                var expected = new Helper.PixelImage(region, 4, 3, Helper.PixelFormat.RGBA, QOISpecification.RGBA, QOISpecification.sRGB);
+                var rows = new Helper.PixelImage(Arrays.copyOfRange(decoded.data(), 9, 6 * 9), 9, 5,
+                        Helper.PixelFormat.RGBA, QOISpecification.RGBA, QOISpecification.sRGB);
+                passed = index.decodeRegion(file, 2, 3, 4, 3).equals(expected)
+                        && index.decodeRows(file, 1, 6).equals(rows)
+                        && index.decodeRows(file, 0, 7).equals(decoded);
+
+                var all = QOIDecoder.decodeQoiImage(largeFile).data();
+                var largeIndex = QOIIndex.fromBytes(QOIIndex.build(largeFileChannel, 16).toBytes());
+                int[][] regions = {{0, 0, 400, 300}, {17, 5, 100, 90}, {399, 299, 1, 1}, {250, 130, 150, 170}};
+                for (var r : regions){
+                    var pixels = largeIndex.decodeRegion(largeFileChannel, r[0], r[1], r[2], r[3]).data();
+                    for (int line = 0 ; line < r[3] ; ++line){
+                        int from = (r[1] + line) * 400 + r[0];
+                        passed &= Arrays.equals(pixels, line * r[2], (line + 1) * r[2], all, from, from + r[2]);
+                    }
+                }
+                try {
+                    QOIIndex.build(truncated);
+                    passed = false;
+                } catch (EOFException e){
+                    // The chunks end before the last pixel
+                }
+            }
+            deleteTree(directory);
+            return passed;
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean testThumbnail(){
+        int[] pixels = {
+                0xFF0A1420, 0xFF14283C, 0x00FFFFFF, 0x00FFFFFF,
+                0xFF1E3C5A, 0xFF285078, 0x00FFFFFF, 0xFF646464,
+                0xFF000000, 0xFF000000, 0xFFFFFFFF, 0xFFFFFFFF,
+                0xFF000000, 0xFF000000, 0xFFFFFFFF, 0xFFFFFFFF
+        };
+        var image = new Helper.PixelImage(pixels, 4, 4, Helper.PixelFormat.ARGB, QOISpecification.RGBA, QOISpecification.sRGB);
+        byte[] file = QOIEncoder.qoiFile(image);
+        try (var decoder = new QOIStreamDecoder(new ByteArrayInputStream(file))){
+            int[] expected = {0x19324CFF, 0x64646440, 0x000000FF, 0xFFFFFFFF};
+            return Arrays.equals(QOIThumbnailer.thumbnail(decoder, 2, 2).data(), expected);
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean testDecodeBufferedImage(){
+        int[] pixels = {0xFF102030, 0x80405060, 0xFF102030, 0x00000000, 0xFFFFFFFF, 0xFF708090};
+        for (byte channels : new byte[]{QOISpecification.RGB, QOISpecification.RGBA}){
+            var image = new Helper.PixelImage(pixels, 3, 2, Helper.PixelFormat.ARGB, channels, QOISpecification.sRGB);
+            var decoded = QOIDecoder.decodeBufferedImage(QOIEncoder.qoiFile(image));
+            for (int i = 0 ; i < pixels.length ; ++i){
+                int expected = (channels == QOISpecification.RGB) ? pixels[i] | 0xFF000000 : pixels[i];
+                if (decoded.getRGB(i % 3, i / 3) != expected)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean testReusableCodec(){
+        var first = syntheticImage(6, 5, Helper.PixelFormat.ARGB, i -> 0xFF000000 | (i % 7) * 0x0A1B2C);
+        var second = new Helper.PixelImage(new int[]{0x80FF0000, 0x80FF0000, 0xFF00FF00}, 3, 1,
+                Helper.PixelFormat.ARGB, QOISpecification.RGB, QOISpecification.ALL);
+        var encoder = QOICodecPool.encoder();
+        var decoder = QOICodecPool.decoder();
+        for (var image : new Helper.PixelImage[]{first, second, first}){
+            byte[] expected = QOIEncoder.qoiFile(image);
+            if ((encoder.encode(image) != expected.length) || !Arrays.equals(encoder.toByteArray(), expected))
+                return false;
+            if (!decoder.decode(expected).equals(QOIDecoder.decodeQoiImage(expected)))
+                return false;
+        }
+        return (QOICodecPool.encoder() == encoder) && (QOICodecPool.decoder() == decoder);
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean testStatistics(){
+        var image = opsImage();
+        byte[] file = QOIEncoder.qoiFile(image);
+        long[] ops = new long[QOIStatistics.Op.values().length];
+        long[] runs = new long[62];
+        QOIStatistics.scan(file, QOISpecification.HEADER_SIZE, file.length - QOISpecification.QOI_EOF.length, ops, runs);
+        long[] expected = {1, 1, 1, 1, 1, 1};
+        return Arrays.equals(ops, expected) && (runs[1] == 1);
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean testStatisticsMXBean(){
+        if (!QOIStatistics.ENABLED)
+            return true;
+        try {
+            var statistics = JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(),
+                    new ObjectName(QOIStatistics.OBJECT_NAME), QOIStatisticsMXBean.class);
+            statistics.reset();
+            int[] pixels = opsImage().data();
+            var output = new ByteArrayOutputStream();
+            try (var encoder = new QOIStreamEncoder(output, 7, 1, QOISpecification.RGBA, QOISpecification.sRGB)){
+                encoder.writePixels(pixels, 0, 4, Helper.PixelFormat.ARGB);
+                encoder.writePixels(pixels, 4, 3, Helper.PixelFormat.ARGB);
+            }
+            byte[] file = output.toByteArray();
+            long chunks = file.length - QOISpecification.HEADER_SIZE - QOISpecification.QOI_EOF.length;
+            var ops = new HashMap<String, Long>();
+            for (var op : QOIStatistics.Op.values()){
+                ops.put(op.name(), 1L);
+            }
+            boolean encoded = (statistics.getEncodedImages() == 1) && (statistics.getEncodedPixels() == 7)
+                    && (statistics.getEncodedBytes() == chunks) && statistics.getEncodedOps().equals(ops)
+                    && (statistics.getEncodedRunLengths()[1] == 1);
+
+            var image = QOIDecoder.decodeQoiImage(ByteBuffer.wrap(file));
+            boolean decoded = (statistics.getDecodedImages() == 1) && (statistics.getDecodedPixels() == 7)
+                    && (statistics.getDecodedBytes() == chunks) && statistics.getDecodedOps().equals(ops)
+                    && (statistics.getDecodedRunLengths()[1] == 1);
+            return encoded && decoded && (image.width() == 7);
+        } catch (IOException | JMException e){
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean testCatalogue(){
+        try {
+            var directory = Files.createTempDirectory("catalogue");
+            var image = new Helper.PixelImage(new int[]{0xFF102030, 0xFF405060}, 1, 2,
+                    Helper.PixelFormat.ARGB, QOISpecification.RGB, QOISpecification.ALL);
+            var file = QOIEncoder.qoiFile(image);
+            Files.createDirectory(directory.resolve("nested"));
+            Files.write(directory.resolve("nested").resolve("image.qoi"), file);
+            Files.write(directory.resolve("notes.txt"), "not an image".getBytes(StandardCharsets.UTF_8));
+            Files.write(directory.resolve("truncated.qoi"), Arrays.copyOf(file, 9));
+            var catalogue = directory.resolve("catalogue.bin");
+            // A directory that cannot be read is counted and skipped, the rest of the tree is still scanned
+            var locked = Files.createDirectory(directory.resolve("locked"));
+            Files.write(locked.resolve("hidden.qoi"), file);
+            boolean lockable = locked.toFile().setReadable(false) && !locked.toFile().canRead();
+            var summary = QOICatalogue.scan(directory, catalogue);
+            locked.toFile().setReadable(true);
+            var entries = QOICatalogue.read(catalogue);
+            var expected = new QOICatalogue.Entry("nested/image.qoi", file.length, 1, 2, QOISpecification.RGB, QOISpecification.ALL);
+            boolean probed = Arrays.equals(QOIDecoder.probe(directory.resolve("nested").resolve("image.qoi")),
+                    new int[]{1, 2, QOISpecification.RGB, QOISpecification.ALL})
+                    && (QOIDecoder.probe(directory.resolve("notes.txt")) == null)
+                    && (QOIDecoder.probe(directory.resolve("truncated.qoi")) == null);
+            // A file that cannot be read (removed since the walk) does not stop the batch
+            var batch = QOICatalogue.probe(directory, List.of(directory.resolve("removed.qoi"),
+                    directory.resolve("nested").resolve("image.qoi")), new long[]{0, file.length});
+            boolean skipped = (batch[0] == null) && expected.equals(batch[1]);
+            deleteTree(directory);
+            // Unless the directory stays readable (as for root), then its file is listed
+            return probed && skipped && (summary.files() == (lockable ? 1 : 2)) && (summary.failures() == (lockable ? 1 : 0))
+                    && entries.contains(expected) && (entries.size() == summary.files());
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean testDiffCompare(){
+        try {
+            var file_1 = Files.createTempFile("diff", ".bin");
+            var file_2 = Files.createTempFile("diff", ".bin");
+            Files.write(file_1, new byte[]{1, 2, 3, 4, 5, 6});
+            Files.write(file_2, new byte[]{1, 0, 3, 4, 0});
+            var result = Diff.compare(file_1, file_2);
+            var same = Diff.compare(file_1, file_1);
+            // A truncated copy : the common part is the same, the files differ from the end of the shorter one
+            Files.write(file_2, new byte[]{1, 2, 3, 4});
+            var prefix = Diff.compare(file_1, file_2);
+            var printed = captureOut(() -> Diff.verify(file_1.toString(), file_2.toString(), false));
+            Files.delete(file_1);
+            Files.delete(file_2);
+            boolean truncated = prefix.equals(new Diff.Mismatches(6, 4, -1, 0)) && !prefix.identical()
+                    && (prefix.firstDifference() == 4) && (same.firstDifference() == -1) && (result.firstDifference() == 1)
+                    && printed.contains("First mismatch at [000004]") && printed.contains("(6 and 4 bytes)");
+
+            // Images of different sizes are reported, not compared
+            var qoi_1 = Files.createTempFile("diff", ".qoi");
+            var qoi_2 = Files.createTempFile("diff", ".qoi");
+            Files.write(qoi_1, QOIEncoder.qoiFile(syntheticImage(3, 2, Helper.PixelFormat.ARGB, i -> 0xFF000000 | i)));
+            Files.write(qoi_2, QOIEncoder.qoiFile(syntheticImage(2, 3, Helper.PixelFormat.ARGB, i -> 0xFF000000 | i)));
+            printed = captureOut(() -> Diff.verify(qoi_1.toString(), qoi_2.toString(), true));
+            Files.delete(qoi_1);
+            Files.delete(qoi_2);
+            truncated &= printed.contains("different sizes (3 x 2 and 2 x 3)");
+
+            var image_1 = new Helper.PixelImage(new int[]{0xFF102030, 0xFF405060}, 2, 1,
+                    Helper.PixelFormat.ARGB, QOISpecification.RGBA, QOISpecification.sRGB);
+            var image_2 = new Helper.PixelImage(new int[]{0x102030FF, 0x405A60FF}, 2, 1,
+                    Helper.PixelFormat.RGBA, QOISpecification.RGBA, QOISpecification.sRGB);
+            var stats = Diff.comparePixels(image_1, image_2);
+            return truncated && result.equals(new Diff.Mismatches(6, 5, 1, 2)) && !result.identical() && same.identical()
+                    && (stats.mismatches() == 1) && (stats.maxDelta() == 10)
+                    && (Math.abs(stats.psnr() - 10 * Math.log10(255.0 * 255.0 / (100.0 / 8))) < 1e-9)
+                    && Double.isInfinite(Diff.comparePixels(image_1, image_1).psnr());
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean testDisassembler(){
+        var image = opsImage();
+        byte[] file = QOIEncoder.qoiFile(image);
+        try {
+            var lines = new StringBuilder();
+            var summary = QOIDisassembler.disassemble(Channels.newChannel(new ByteArrayInputStream(file)), lines);
+            var truncated = QOIDisassembler.disassemble(
+                    Channels.newChannel(new ByteArrayInputStream(Arrays.copyOf(file, file.length - 3))), null);
+            var expected = "000012 : 04              | QOI_OP_INDEX | 4            | 010101FF";
+            return summary.complete() && (summary.pixels() == 7) && (summary.bytes() == file.length - 22)
+                    && Arrays.equals(summary.ops(), new long[]{1, 1, 1, 1, 1, 1})
+                    && lines.toString().lines().anyMatch(expected::equals)
+                    && (lines.toString().lines().count() == 6)
+                    && !truncated.complete();
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean testStripTranscoder(){
+        try {
+            var directory = Files.createTempDirectory("strips");
+            var rowReader = List.of(
+                    writePng(syntheticBufferedImage(7, 5, BufferedImage.TYPE_3BYTE_BGR), directory.resolve("rgb.png"), false),
+                    writePng(syntheticBufferedImage(7, 5, BufferedImage.TYPE_4BYTE_ABGR), directory.resolve("rgba.png"), false),
+                    writePng(syntheticBufferedImage(7, 5, BufferedImage.TYPE_BYTE_INDEXED), directory.resolve("indexed.png"), false));
+            var regions = List.of(
+                    writePng(syntheticBufferedImage(7, 5, BufferedImage.TYPE_4BYTE_ABGR), directory.resolve("interlaced.png"), true),
+                    writePng(syntheticBufferedImage(7, 5, BufferedImage.TYPE_USHORT_GRAY), directory.resolve("gray16.png"), false));
+            boolean passed = true;
+            for (var file : Stream.concat(rowReader.stream(), regions.stream()).toList()){
+                try (var rows = PNGRowReader.open(file)){
+                    passed &= (rows == null) == regions.contains(file);
+                }
+                // Strips of 2 rows, the last one holds a single row
+                var output = new ByteArrayOutputStream();
+                StripTranscoder.transcode(file, Channels.newChannel(output), 2 * 7);
+                var expected = Helper.readPixelImage(file.toString());
+                var decoded = QOIDecoder.decodeQoiImage(output.toByteArray());
+                for (int y = 0 ; y < 5 ; ++y){
+                    for (int x = 0 ; x < 7 ; ++x){
+                        passed &= decoded.data()[y * 7 + x] == Integer.rotateLeft(expected.data()[y * 7 + x], 8);
+                    }
+                }
+                passed &= Arrays.equals(output.toByteArray(), QOIEncoder.qoiFile(expected));
+            }
+
+            // Ancillary chunk after the header : a large one is skipped, a corrupted length fails without allocating it
+            var png = Files.readAllBytes(rowReader.get(0));
+            var text = new byte[100_000];
+            Arrays.fill(text, (byte) 'x');
+            var large = directory.resolve("large.png");
+            var corrupted = directory.resolve("corrupted.png");
+            Files.write(large, withChunk(png, "tEXt", text, text.length));
+            Files.write(corrupted, withChunk(png, "iCCP", text, Integer.MAX_VALUE));
+            try (var rows = PNGRowReader.open(large)){
+                int[] row = new int[7];
+                rows.readRow(row, 0);
+                passed &= Arrays.equals(row, Arrays.copyOf(Helper.readPixelImage(rowReader.get(0).toString()).data(), 7));
+            }
+            try {
+                var rows = PNGRowReader.open(corrupted);
+                if (rows != null)
+                    rows.close();
+                passed = false;
+            } catch (IOException e){
+                // Expected
+            }
+            deleteTree(directory);
+            return passed;
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Insert a chunk right after the header of a "PNG" file
+     * @param png (byte[]) - Content of the file
+     * @param type (String) - Type of the chunk
+     * @param content (byte[]) - Content of the chunk
+     * @param length (int) - Length written in the chunk, the length of the content for a valid chunk
+     * @return (byte[]) - Content of the new file
+     */
+    private static byte[] withChunk(byte[] png, String type, byte[] content, int length){
+        int header = 8 + 4 + 4 + 13 + 4;
+        var crc = new CRC32();
+        crc.update(type.getBytes(StandardCharsets.US_ASCII));
+        crc.update(content);
+        return ByteBuffer.allocate(png.length + 12 + content.length)
+                .put(png, 0, header).putInt(length).put(type.getBytes(StandardCharsets.US_ASCII)).put(content)
+                .putInt((int) crc.getValue()).put(png, header, png.length - header).array();
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean testBatchTranscoder(){
+        try {
+            var source = Files.createTempDirectory("batch");
+            var png = writePng(syntheticBufferedImage(6, 4, BufferedImage.TYPE_4BYTE_ABGR), source.resolve("image.png"), false);
+            var image = syntheticImage(5, 3, Helper.PixelFormat.ARGB, i -> (i % 4 == 0) ? 0xFF102030 : 0x80000000 | i * 0x0D0E0F);
+            Files.createDirectory(source.resolve("nested"));
+            Files.write(source.resolve("nested").resolve("image.qoi"), QOIEncoder.qoiFile(image));
+            Files.write(source.resolve("notes.txt"), "not an image".getBytes(StandardCharsets.UTF_8));
+            Files.write(source.resolve("broken.qoi"), Arrays.copyOf(QOIEncoder.qoiFile(image), 20));
+            // Fails while the strips are encoded, after the output is opened
+            var large = Files.readAllBytes(writePng(syntheticBufferedImage(64, 64, BufferedImage.TYPE_4BYTE_ABGR),
+                    source.resolve("large.png"), false));
+            Files.write(source.resolve("truncated.png"), Arrays.copyOf(large, large.length / 2));
+            Files.delete(source.resolve("large.png"));
+            long sources = Files.size(png) + Files.size(source.resolve("nested").resolve("image.qoi"));
+            // The destination is inside the source and already holds a converted file
+            var destination = source.resolve("converted");
+            writePng(syntheticBufferedImage(2, 2, BufferedImage.TYPE_3BYTE_BGR), Files.createDirectories(destination).resolve("old.png"), false);
+
+            var summary = BatchTranscoder.transcode(source, destination, 2, 1);
+            var qoi = Files.readAllBytes(destination.resolve("image.qoi"));
+            var decoded = Helper.readPixelImage(destination.resolve("nested").resolve("image.png").toString());
+            boolean passed = (summary.files() == 2) && (summary.failures() == 2) && (summary.bytesRead() == sources)
+                    && !Files.exists(destination.resolve("truncated.qoi")) && !Files.exists(destination.resolve("broken.png"))
+                    && !Files.exists(destination.resolve("truncated.qoi.part")) && !Files.exists(destination.resolve("broken.png.part"))
+                    && Arrays.equals(qoi, QOIEncoder.qoiFile(Helper.readPixelImage(png.toString())))
+                    && Arrays.equals(decoded.data(), image.data())
+                    && !Files.exists(destination.resolve("old.qoi"))
+                    && !Files.exists(destination.resolve("converted"));
+            deleteTree(source);
+            return passed;
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean testRasterPixels(){
+        int[] types = {BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR,
+                BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_BYTE_INDEXED};
+        try {
+            var directory = Files.createTempDirectory("rasters");
+            boolean passed = true;
+            for (int type : types){
+                var image = syntheticBufferedImage(7, 5, type);
+                // The raster of a sub image is shared with its parent : read through BufferedImage::getRGB
+                var part = image.getSubimage(1, 2, 4, 3);
+                passed &= pixelsMatch(Helper.pixels(image), image) && pixelsMatch(Helper.pixels(part), part);
+                var png = writePng(image, directory.resolve(type + ".png"), false);
+                passed &= pixelsMatch(Helper.readPixelImage(png.toString()).data(), ImageIO.read(png.toFile()));
+            }
+            deleteTree(directory);
+            return passed;
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean testFlightRecorderEvents(){
+        try {
+            var directory = Files.createTempDirectory("events");
+            var png = writePng(syntheticBufferedImage(6, 4, BufferedImage.TYPE_4BYTE_ABGR), directory.resolve("image.png"), false);
+            var events = List.of("cs107.Read", "cs107.Encode", "cs107.Decode", "cs107.FileWrite");
+            var names = new ArrayList<List<String>>();
+            var sized = true;
+            // All the events, then the encoding events only (a closed recording leaves its events enabled)
+            for (var enabled : List.of(events, List.of("cs107.Encode"))){
+                try (var recording = new Recording()){
+                    for (var event : events){
+                        if (enabled.contains(event))
+                            recording.enable(event);
+                        else
+                            recording.disable(event);
+                    }
+                    recording.start();
+                    var image = Helper.readPixelImage(png.toString());
+                    var output = new ByteArrayOutputStream();
+                    try (var encoder = new QOIStreamEncoder(output, 6, 4, QOISpecification.RGBA, QOISpecification.sRGB)){
+                        // Spans that do not follow the rows : [0, 4), [4, 8), [8, 18) and [18, 24)
+                        int[] ends = {4, 8, 18, 24};
+                        for (int i = 0, from = 0 ; i < ends.length ; from = ends[i++]){
+                            encoder.writePixels(image.data(), from, ends[i] - from, image.format());
+                        }
+                    }
+                    QOIDecoder.decodeQoiImage(output.toByteArray());
+                    recording.stop();
+                    var file = directory.resolve("recording.jfr");
+                    recording.dump(file);
+                    // The dump may hold events of a previous recording sharing the same chunk
+                    var recorded = RecordingFile.readAllEvents(file).stream()
+                            .filter(event -> !event.getStartTime().isBefore(recording.getStartTime())).toList();
+                    names.add(recorded.stream().map(event -> event.getEventType().getName()).toList());
+                    // The raw bytes written have no image dimensions
+                    sized &= recorded.stream().filter(event -> event.getEventType().getName().equals("cs107.FileWrite"))
+                            .allMatch(event -> !event.hasField("width") && (event.getLong("bytes") > 0));
+                    // Each encoding event spans the rows touched by its pixels, partial rows included
+                    var heights = recorded.stream().filter(event -> event.getEventType().getName().equals("cs107.Encode"))
+                            .map(event -> event.getInt("height")).toList();
+                    sized &= heights.equals(List.of(1, 2, 2, 1));
+                }
+            }
+            deleteTree(directory);
+            var all = names.get(0);
+            return sized && all.contains("cs107.Read") && all.contains("cs107.Decode") && all.contains("cs107.FileWrite")
+                    && (all.stream().filter("cs107.Encode"::equals).count() == 4)
+                    && names.get(1).stream().allMatch("cs107.Encode"::equals) && (names.get(1).size() == 4);
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean testPixelKernels(){
+        var random = new java.util.Random(18);
+        for (int i = 0 ; i < 1000 ; ++i){
+            int pixel = random.nextInt();
+            byte[] bytes = {(byte) (pixel >>> 24), (byte) (pixel >>> 16), (byte) (pixel >>> 8), (byte) pixel};
+            if (PixelKernels.hash(pixel) != QOISpecification.hash(bytes))
+                return false;
+        }
+        int[] pixels = {1, 2, 2, 2, 3, 3};
+        if (!((PixelKernels.run(pixels, 2, 6) == 2) && (PixelKernels.run(pixels, 5, 6) == 1)
+                && (PixelKernels.run(pixels, 1, 6) == 0) && (PixelKernels.run(pixels, 6, 6) == 0)))
+            return false;
+        // Every available backend gives exactly the results of the SCALAR one, tails included
+        var reference = PixelKernels.kernels(PixelKernels.Backend.SCALAR);
+        for (var backend : PixelKernels.Backend.values()){
+            var kernels = PixelKernels.kernels(backend);
+            if (kernels == null)
+                continue;
+            for (int length = 0 ; length < 200 ; length += 1 + length / 8){
+                int[] src = random.ints(length + 3).toArray();
+                int[] expected = new int[length + 5];
+                int[] actual = new int[length + 5];
+                reference.argbToRgba(src, 3, expected, 2, length);
+                kernels.argbToRgba(src, 3, actual, 2, length);
+                if (!Arrays.equals(expected, actual))
+                    return false;
+                reference.rgbaToArgb(src, 3, expected, 2, length);
+                kernels.rgbaToArgb(src, 3, actual, 2, length);
+                if (!Arrays.equals(expected, actual))
+                    return false;
+                for (boolean argb : new boolean[]{false, true}){
+                    reference.hash(src, 3, length + 3, argb, expected, 1);
+                    kernels.hash(src, 3, length + 3, argb, actual, 1);
+                    if (!Arrays.equals(expected, actual))
+                        return false;
+                }
+                // A run ending at every position of the span, or not ending before its end
+                for (int end = 1 ; end <= length + 1 ; ++end){
+                    int[] run = new int[length + 1];
+                    Arrays.fill(run, 0, end, 7);
+                    if (reference.run(run, 1, length + 1) != kernels.run(run, 1, length + 1))
+                        return false;
+                }
+            }
+            int[] inPlace = random.ints(100).toArray();
+            int[] expected = inPlace.clone();
+            reference.argbToRgba(expected, 0, expected, 0, 100);
+            kernels.argbToRgba(inPlace, 0, inPlace, 0, 100);
+            if (!Arrays.equals(expected, inPlace))
+                return false;
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean testPackedPrimitives(){
+        int previous = QOISpecification.pack(new byte[]{(byte) 255, 10, 0, 7});
+        int pixel = QOISpecification.pack(new byte[]{1, 7, (byte) 250, 7});
+        int dr = QOISpecification.deltaRed(pixel, previous);
+        int dg = QOISpecification.deltaGreen(pixel, previous);
+        int db = QOISpecification.deltaBlue(pixel, previous);
+        byte[] luma = new byte[2];
+        byte[] diff = new byte[1];
+        int end = QOISpecification.writeLuma(luma, 0, dr, dg, db);
+        QOISpecification.writeDiff(diff, 0, 1, -2, 0);
+        return (dr == 2) && (dg == -3) && (db == -6)
+                && !QOISpecification.isDiff(dr, dg, db) && QOISpecification.isLuma(dr, dg, db)
+                && (end == 2) && Arrays.equals(luma, QOIEncoder.qoiOpLuma(new byte[]{2, -3, -6}))
+                && Arrays.equals(diff, QOIEncoder.qoiOpDiff(new byte[]{1, -2, 0}))
+                && (QOISpecification.addDelta(previous, dr, dg, db) == pixel)
+                && Arrays.equals(QOISpecification.unpack(pixel), new byte[]{1, 7, (byte) 250, 7})
+                && (QOISpecification.alpha(QOISpecification.START_PIXEL_RGBA) == 255);
+    }
+
+    // ============================================================================================
+    // ================================== Test fixtures ===========================================
+    // ============================================================================================
+
+    /**
+     * Build a synthetic image
+     * @param width (int) - Width of the image
+     * @param height (int) - Height of the image
+     * @param format (Helper.PixelFormat) - Packing of the pixels
+     * @param pixel (IntUnaryOperator) - Packed pixel at each index of the image
+     * @return (Helper.PixelImage) - The image, with 4 channels in the sRGB color space
+     */
+    private static Helper.PixelImage syntheticImage(int width, int height, Helper.PixelFormat format, IntUnaryOperator pixel){
+        int[] pixels = new int[width * height];
+        for (int i = 0 ; i < pixels.length ; ++i){
+            pixels[i] = pixel.applyAsInt(i);
+        }
+        return new Helper.PixelImage(pixels, width, height, format, QOISpecification.RGBA, QOISpecification.sRGB);
+    }
+
+    /**
+     * Run an action and capture what it prints in the Terminal
+     * @param action (Runnable) - Action to run
+     * @return (String) - Text printed on System.out by the action
+     */
+    private static String captureOut(Runnable action){
+        var out = System.out;
+        var captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true, StandardCharsets.UTF_8));
+        try {
+            action.run();
+        } finally {
+            System.setOut(out);
+        }
+        return captured.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return (Helper.PixelImage) - Image of 7 x 1 ARGB pixels encoded with one chunk of each operation
+     * (QOI_OP_RUN of 2 pixels, QOI_OP_DIFF, QOI_OP_LUMA, QOI_OP_INDEX, QOI_OP_RGBA then QOI_OP_RGB)
+     */
+    private static Helper.PixelImage opsImage(){
+        int[] pixels = {0xFF000000, 0xFF000000, 0xFF010101, 0xFF0A0C0E, 0xFF010101, 0x80FFFFFF, 0x80123456};
+        return new Helper.PixelImage(pixels, 7, 1, Helper.PixelFormat.ARGB, QOISpecification.RGBA, QOISpecification.sRGB);
+    }
+
+    /**
+     * Build a synthetic image with the raster of a given type, with runs and translucent pixels
+     * @param width (int) - Width of the image
+     * @param height (int) - Height of the image
+     * @param type (int) - Type of the image (See BufferedImage), TYPE_BYTE_INDEXED images get a palette
+     * of 256 opaque, translucent and transparent colours (written to "PNG" with a tRNS chunk)
+     * @return (BufferedImage) - The image
+     */
+    private static BufferedImage syntheticBufferedImage(int width, int height, int type){
+        BufferedImage image;
+        if (type == BufferedImage.TYPE_BYTE_INDEXED){
+            byte[] red = new byte[256], green = new byte[256], blue = new byte[256], alpha = new byte[256];
+            for (int k = 0 ; k < 256 ; ++k){
+                red[k] = (byte) (k * 7);
+                green[k] = (byte) (k * 13);
+                blue[k] = (byte) (255 - k);
+                alpha[k] = (byte) ((k % 3 == 0) ? 0xFF : (k % 3 == 1) ? 0x80 : 0);
+            }
+            image = new BufferedImage(width, height, type, new IndexColorModel(8, 256, red, green, blue, alpha));
+            for (int i = 0 ; i < width * height ; ++i){
+                image.getRaster().setSample(i % width, i / width, 0, (i % 4 == 0) ? 1 : i * 37 % 256);
+            }
+        } else {
+            image = new BufferedImage(width, height, type);
+            for (int i = 0 ; i < width * height ; ++i){
+                image.setRGB(i % width, i / width, (i % 4 == 0) ? 0xFF204060 : (i * 0x3C1F0D7) ^ 0x40000000 * (i % 3));
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Write an image to a "PNG" file with ImageIO
+     * @param image (BufferedImage) - Image to write
+     * @param path (Path) - Destination
+     * @param interlaced (boolean) - true to write the rows in the Adam7 order
+     * @return (Path) - The destination
+     * @throws IOException if the file cannot be written
+     */
+    private static Path writePng(BufferedImage image, Path path, boolean interlaced) throws IOException {
+        var writer = ImageIO.getImageWritersByFormatName("png").next();
+        var param = writer.getDefaultWriteParam();
+        if (interlaced)
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+        try (var output = ImageIO.createImageOutputStream(path.toFile())){
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return path;
+    }
+
+    /**
+     * Decode a "Quite Ok Image" file with a QOIStreamDecoder
+     * @param file (byte[]) - Content of the file
+     * @param bufferSize (int) - Size of the input buffer of the decoder
+     * @return (Helper.PixelImage) - The image (RGBA packed pixels)
+     * @throws IOException if the decoder fails
+     */
+    private static Helper.PixelImage streamDecode(byte[] file, int bufferSize) throws IOException {
+        try (var decoder = new QOIStreamDecoder(Channels.newChannel(new ByteArrayInputStream(file)), bufferSize)){
+            int[] pixels = new int[decoder.width() * decoder.height()];
+            decoder.decode((y, row, offset, width) -> System.arraycopy(row, offset, pixels, y * width, width));
+            return new Helper.PixelImage(pixels, decoder.width(), decoder.height(), Helper.PixelFormat.RGBA,
+                    decoder.channels(), decoder.colorSpace());
+        }
+    }
+
+    /**
+     * Compare ARGB packed pixels with the ones given by BufferedImage::getRGB, pixel by pixel
+     * @param pixels (int[]) - ARGB packed pixels, row after row
+     * @param image (BufferedImage) - Reference image
+     * @return (boolean) - true if every pixel is the one of the image
+     */
+    private static boolean pixelsMatch(int[] pixels, BufferedImage image){
+        if (pixels.length != image.getWidth() * image.getHeight())
+            return false;
+        for (int y = 0 ; y < image.getHeight() ; ++y){
+            for (int x = 0 ; x < image.getWidth() ; ++x){
+                if (pixels[y * image.getWidth() + x] != image.getRGB(x, y))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Delete a folder and its content
+     * @param directory (Path) - Folder to delete
+     * @throws IOException if the folder cannot be listed
+     */
+    private static void deleteTree(Path directory) throws IOException {
+        try (var files = Files.walk(directory)){
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
 }
\ No newline at end of file
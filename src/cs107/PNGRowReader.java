@@ -0,0 +1,356 @@
+package cs107;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Sequential reader of the rows of a "PNG" file.
+ * Only one row (and the previous one, for the filters) is kept in memory,
+ * the chunks that are not used are skipped through a small buffer.
+ * Handles the layouts produced by most encoders : 8 bits per sample, not interlaced,
+ * truecolor with or without alpha (without tRNS) and indexed color.
+ * The pixels are the same as the ones given by ImageIO and BufferedImage::getRGB.
+ * @apiNote Used by StripTranscoder, not thread safe
+ */
+final class PNGRowReader implements Closeable {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private static final int IHDR = 0x49484452;
+    private static final int PLTE = 0x504C5445;
+    private static final int TRNS = 0x74524E53;
+    private static final int IDAT = 0x49444154;
+
+    private static final int TRUECOLOR = 2;
+    private static final int INDEXED = 3;
+    private static final int TRUECOLOR_ALPHA = 6;
+
+    private final DataInputStream file;
+    private final CRC32 crc = new CRC32();
+    private final byte[] block = new byte[1 << 12];
+    private final Inflater inflater = new Inflater();
+    private final int width;
+    private final int height;
+    private final int colorType;
+    private final int bpp;
+    private int[] palette;
+    private boolean transparent = false;
+    private DataInputStream data;
+    private byte[] current;
+    private byte[] previous;
+    private int row = 0;
+    private long compressed = 0;
+
+    private PNGRowReader(DataInputStream file, int width, int height, int colorType){
+        this.file = file;
+        this.width = width;
+        this.height = height;
+        this.colorType = colorType;
+        this.bpp = switch (colorType){
+            case TRUECOLOR -> 3;
+            case TRUECOLOR_ALPHA -> 4;
+            default -> 1;
+        };
+    }
+
+    /**
+     * Open a "PNG" file and read its chunks up to the image data
+     * @param path (Path) - Path of the file
+     * @return (PNGRowReader) - Reader positioned on the first row,
+     * or null if the file is not a "PNG" file or uses a layout that is not handled
+     * @throws IOException if the file cannot be read or is corrupted
+     */
+    static PNGRowReader open(Path path) throws IOException {
+        var file = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+        PNGRowReader reader = null;
+        try {
+            var signature = new byte[SIGNATURE.length];
+            if ((file.readNBytes(signature, 0, signature.length) != signature.length) || !Arrays.equals(signature, SIGNATURE))
+                return null;
+            var length = file.readInt();
+            if ((length != 13) || (file.readInt() != IHDR))
+                return null;
+            var header = new byte[length];
+            file.readFully(header);
+            var crc = new CRC32();
+            start(crc, IHDR);
+            crc.update(header);
+            if ((int) crc.getValue() != file.readInt())
+                throw new IOException("Corrupted PNG header");
+
+            int width  = (header[0] & 0xFF) << 24 | (header[1] & 0xFF) << 16 | (header[2] & 0xFF) << 8 | (header[3] & 0xFF);
+            int height = (header[4] & 0xFF) << 24 | (header[5] & 0xFF) << 16 | (header[6] & 0xFF) << 8 | (header[7] & 0xFF);
+            int depth = header[8];
+            int colorType = header[9];
+            int interlace = header[12];
+            if ((width <= 0) || (height <= 0) || (depth != 8) || (interlace != 0)
+                    || ((colorType != TRUECOLOR) && (colorType != INDEXED) && (colorType != TRUECOLOR_ALPHA)))
+                return null;
+
+            reader = new PNGRowReader(file, width, height, colorType);
+            return reader.readChunks() ? reader : null;
+        } finally {
+            if (reader == null || reader.data == null){
+                file.close();
+                if (reader != null)
+                    reader.inflater.end();
+            }
+        }
+    }
+
+    /**
+     * @return (int) - Width of the image
+     */
+    int width(){
+        return width;
+    }
+
+    /**
+     * @return (int) - Height of the image
+     */
+    int height(){
+        return height;
+    }
+
+    /**
+     * @return (boolean) - true if the pixels have an alpha channel, as ColorModel::hasAlpha for ImageIO
+     */
+    boolean hasAlpha(){
+        return (colorType == TRUECOLOR_ALPHA) || transparent;
+    }
+
+    /**
+     * @return (long) - Number of bytes of image data (compressed) read so far
+     */
+    long compressedBytes(){
+        return compressed;
+    }
+
+    /**
+     * Decode the next row of the image
+     * @param pixels (int[]) - Array where to store the ARGB packed pixels of the row
+     * @param offset (int) - Index in pixels of the first pixel of the row
+     * @throws AssertionError if all the rows were already read or the array is too small
+     * @throws IOException if the file cannot be read or is corrupted
+     */
+    void readRow(int[] pixels, int offset) throws IOException {
+        assert row < height;
+        assert (offset >= 0) && (offset + width <= pixels.length);
+
+        var filter = data.read();
+        if (filter < 0)
+            throw new EOFException("Truncated PNG data at row " + row);
+        data.readFully(current);
+        unfilter(filter);
+
+        var bytes = current;
+        switch (colorType){
+            case TRUECOLOR -> {
+                for (int i = 0, j = 0; i < width; ++i, j += 3){
+                    pixels[offset + i] = 0xFF_00_00_00 | (bytes[j] & 0xFF) << 16 | (bytes[j+1] & 0xFF) << 8 | (bytes[j+2] & 0xFF);
+                }
+            }
+            case TRUECOLOR_ALPHA -> {
+                for (int i = 0, j = 0; i < width; ++i, j += 4){
+                    pixels[offset + i] = (bytes[j+3] & 0xFF) << 24 | (bytes[j] & 0xFF) << 16 | (bytes[j+1] & 0xFF) << 8 | (bytes[j+2] & 0xFF);
+                }
+            }
+            default -> {
+                for (var i = 0; i < width; ++i){
+                    var index = bytes[i] & 0xFF;
+                    if (index >= palette.length)
+                        throw new IOException("Palette index out of range at row " + row);
+                    pixels[offset + i] = palette[index];
+                }
+            }
+        }
+        var swap = previous;
+        previous = current;
+        current = swap;
+        ++row;
+    }
+
+    /**
+     * Close the file
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        file.close();
+    }
+
+    /**
+     * Read the chunks before the image data
+     * @return (boolean) - false if the layout is not handled
+     * @throws IOException if the file cannot be read or is corrupted
+     */
+    private boolean readChunks() throws IOException {
+        while (true){
+            var length = file.readInt();
+            var type = file.readInt();
+            if (length < 0)
+                throw new IOException("Corrupted PNG chunk");
+            if (type == IDAT){
+                var rowBytes = Math.multiplyExact(width, bpp);
+                current  = new byte[rowBytes];
+                previous = new byte[rowBytes];
+                if ((colorType == INDEXED) && (palette == null))
+                    throw new IOException("Missing PNG palette");
+                data = new DataInputStream(new InflaterInputStream(new ImageData(length), inflater, 1 << 16));
+                return true;
+            }
+            if (type == PLTE){
+                if ((length % 3 != 0) || (length > 3 * 256))
+                    throw new IOException("Corrupted PNG palette");
+                var content = read(type, length);
+                palette = new int[length / 3];
+                for (int i = 0, j = 0; i < palette.length; ++i, j += 3){
+                    palette[i] = 0xFF_00_00_00 | (content[j] & 0xFF) << 16 | (content[j+1] & 0xFF) << 8 | (content[j+2] & 0xFF);
+                }
+            } else if (type == TRNS){
+                if ((colorType != INDEXED) || (palette == null) || (length > palette.length))
+                    return false;
+                var content = read(type, length);
+                for (var i = 0; i < length; ++i){
+                    palette[i] = (content[i] & 0xFF) << 24 | (palette[i] & 0x00_FF_FF_FF);
+                }
+                transparent = true;
+            } else
+                skip(type, length);
+        }
+    }
+
+    /**
+     * Read the content of a chunk and check its CRC
+     * @param type (int) - Type of the chunk
+     * @param length (int) - Length of the chunk, bounded by the caller
+     * @return (byte[]) - Content of the chunk
+     * @throws IOException if the file cannot be read or the chunk is corrupted
+     */
+    private byte[] read(int type, int length) throws IOException {
+        var content = new byte[length];
+        file.readFully(content);
+        start(crc, type);
+        crc.update(content);
+        if ((int) crc.getValue() != file.readInt())
+            throw new IOException("Corrupted PNG chunk");
+        return content;
+    }
+
+    /**
+     * Skip a chunk that is not used (iCCP, zTXt, eXIf...) and check its CRC,
+     * reading it through a small buffer whatever its length
+     * @param type (int) - Type of the chunk
+     * @param length (int) - Length of the chunk
+     * @throws IOException if the file cannot be read or the chunk is corrupted
+     */
+    private void skip(int type, int length) throws IOException {
+        start(crc, type);
+        for (var remaining = length; remaining > 0; ){
+            var count = Math.min(block.length, remaining);
+            file.readFully(block, 0, count);
+            crc.update(block, 0, count);
+            remaining -= count;
+        }
+        if ((int) crc.getValue() != file.readInt())
+            throw new IOException("Corrupted PNG chunk");
+    }
+
+    private static void start(CRC32 crc, int type){
+        crc.reset();
+        crc.update(type >>> 24);
+        crc.update(type >>> 16);
+        crc.update(type >>> 8);
+        crc.update(type);
+    }
+
+    private void unfilter(int filter) throws IOException {
+        var row = current;
+        var up = previous;
+        switch (filter){
+            case 0 -> {}
+            case 1 -> {
+                for (var i = bpp; i < row.length; ++i)
+                    row[i] += row[i - bpp];
+            }
+            case 2 -> {
+                for (var i = 0; i < row.length; ++i)
+                    row[i] += up[i];
+            }
+            case 3 -> {
+                for (var i = 0; i < row.length; ++i){
+                    var left = (i >= bpp) ? row[i - bpp] & 0xFF : 0;
+                    row[i] += (byte) ((left + (up[i] & 0xFF)) >>> 1);
+                }
+            }
+            case 4 -> {
+                for (var i = 0; i < row.length; ++i){
+                    var a = (i >= bpp) ? row[i - bpp] & 0xFF : 0;
+                    var b = up[i] & 0xFF;
+                    var c = (i >= bpp) ? up[i - bpp] & 0xFF : 0;
+                    var p = a + b - c;
+                    var pa = Math.abs(p - a);
+                    var pb = Math.abs(p - b);
+                    var pc = Math.abs(p - c);
+                    row[i] += (byte) (((pa <= pb) && (pa <= pc)) ? a : (pb <= pc) ? b : c);
+                }
+            }
+            default -> throw new IOException("Unknown PNG filter " + filter + " at row " + this.row);
+        }
+    }
+
+    /**
+     * Content of the consecutive IDAT chunks, checked against their CRC
+     */
+    private final class ImageData extends InputStream {
+
+        private int remaining;
+        private boolean end = false;
+
+        private ImageData(int length){
+            this.remaining = length;
+            start(crc, IDAT);
+        }
+
+        @Override
+        public int read() throws IOException {
+            var one = new byte[1];
+            return (read(one, 0, 1) < 0) ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            while ((remaining == 0) && !end){
+                if ((int) crc.getValue() != file.readInt())
+                    throw new IOException("Corrupted PNG chunk");
+                var length = file.readInt();
+                if (file.readInt() == IDAT){
+                    remaining = length;
+                    start(crc, IDAT);
+                } else
+                    end = true;
+            }
+            if (end)
+                return -1;
+            var count = file.read(b, off, Math.min(len, remaining));
+            if (count < 0)
+                throw new EOFException("Truncated PNG data");
+            crc.update(b, off, count);
+            remaining -= count;
+            compressed += count;
+            return count;
+        }
+    }
+
+}
@@ -0,0 +1,251 @@
+package cs107;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Kernels on packed pixels used by the hot loops of the codec.
+ * The three backends give exactly the same results :
+ * <ul>
+ *     <li>SCALAR : reference implementation, one channel of one pixel at a time.</li>
+ *     <li>PACKED : whole packed pixels at a time, in plain scalar code. The conversions are single rotations,
+ *     the hash sums two channels per multiplication and the end of a run is found by Arrays::mismatch.
+ *     Whether these loops end up vectorized is left to the JIT.</li>
+ *     <li>VECTOR : explicit SIMD code written with the Vector API (cs107.VectorKernels, in the "vector" source set) :
+ *     lane-wise rotations, hashes of a whole span of pixels and equality scans of a vector of pixels for the runs.
+ *     Only available when the module jdk.incubator.vector is present (--add-modules jdk.incubator.vector)
+ *     and cs107.VectorKernels is on the class path.</li>
+ * </ul>
+ * The backend is chosen once at startup with the system property "cs107.kernels" ("vector", "packed" or "scalar").
+ * By default, VECTOR is used when it is available and PACKED otherwise. VECTOR falls back to PACKED as well
+ * when it is asked for but not available.
+ */
+final class PixelKernels {
+
+    /**
+     * Implementations of the kernels
+     */
+    enum Backend { SCALAR, PACKED, VECTOR }
+
+    /**
+     * Kernels of one backend (See PixelKernels for the contract of each kernel)
+     */
+    interface Kernels {
+
+        void argbToRgba(int[] src, int srcPos, int[] dst, int dstPos, int length);
+
+        void rgbaToArgb(int[] src, int srcPos, int[] dst, int dstPos, int length);
+
+        int hash(int pixel);
+
+        void hash(int[] pixels, int from, int to, boolean argb, int[] hashes, int position);
+
+        int run(int[] pixels, int from, int to);
+    }
+
+    /**
+     * Backend used by the kernels
+     */
+    static final Backend BACKEND;
+
+    /**
+     * true if the hashes of the pixels are computed span by span (See PixelKernels::hash(int[], int, int, boolean, int[], int))
+     * rather than pixel by pixel in the codec loops
+     */
+    static final boolean SPAN_HASH;
+
+    private static final Kernels KERNELS;
+
+    static {
+        var name = System.getProperty("cs107.kernels", "vector");
+        var backend = backend(name);
+        var kernels = kernels(backend);
+        if (kernels == null){
+            backend = Backend.PACKED;
+            kernels = kernels(backend);
+        }
+        BACKEND = backend;
+        SPAN_HASH = backend == Backend.VECTOR;
+        KERNELS = kernels;
+    }
+
+    // Hide default constructor
+    private PixelKernels(){}
+
+    private static Backend backend(String name){
+        return switch (name.toLowerCase(Locale.ROOT)){
+            case "scalar" -> Backend.SCALAR;
+            case "packed" -> Backend.PACKED;
+            case "vector" -> Backend.VECTOR;
+            default -> Helper.fail("Unknown kernels backend : \"%s\" (expected \"scalar\", \"packed\" or \"vector\")", name);
+        };
+    }
+
+    /**
+     * Implementation of a backend
+     * @param backend (Backend) - Backend
+     * @return (Kernels) - Kernels of the backend, null if the backend is not available
+     */
+    static Kernels kernels(Backend backend){
+        return switch (backend){
+            case SCALAR -> new Scalar();
+            case PACKED -> new Packed();
+            case VECTOR -> {
+                if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty())
+                    yield null;
+                try {
+                    yield Class.forName("cs107.VectorKernels").asSubclass(Kernels.class)
+                            .getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException | LinkageError e){
+                    yield null;
+                }
+            }
+        };
+    }
+
+    /**
+     * Convert ARGB packed pixels to RGBA packed pixels (the arrays can be the same)
+     * @param src (int[]) - ARGB packed pixels
+     * @param srcPos (int) - Index of the first pixel to convert
+     * @param dst (int[]) - Array where to store the RGBA packed pixels
+     * @param dstPos (int) - Index in dst of the first converted pixel
+     * @param length (int) - Number of pixels to convert
+     */
+    static void argbToRgba(int[] src, int srcPos, int[] dst, int dstPos, int length){
+        KERNELS.argbToRgba(src, srcPos, dst, dstPos, length);
+    }
+
+    /**
+     * Convert RGBA packed pixels to ARGB packed pixels (the arrays can be the same)
+     * @param src (int[]) - RGBA packed pixels
+     * @param srcPos (int) - Index of the first pixel to convert
+     * @param dst (int[]) - Array where to store the ARGB packed pixels
+     * @param dstPos (int) - Index in dst of the first converted pixel
+     * @param length (int) - Number of pixels to convert
+     */
+    static void rgbaToArgb(int[] src, int srcPos, int[] dst, int dstPos, int length){
+        KERNELS.rgbaToArgb(src, srcPos, dst, dstPos, length);
+    }
+
+    /**
+     * Hash an RGBA packed pixel using the hash function specific to "Quite Ok Image" format
+     * @param pixel (int) - RGBA packed pixel
+     * @return (int) - hash of the pixel
+     */
+    static int hash(int pixel){
+        return KERNELS.hash(pixel);
+    }
+
+    /**
+     * Hash a span of packed pixels using the hash function specific to "Quite Ok Image" format
+     * @param pixels (int[]) - Packed pixels
+     * @param from (int) - Index of the first pixel to hash (inclusive)
+     * @param to (int) - Index of the last pixel to hash (exclusive)
+     * @param argb (boolean) - true if the pixels are ARGB packed, false if they are RGBA packed
+     * @param hashes (int[]) - Array where to store the hashes
+     * @param position (int) - Index in hashes of the hash of the first pixel
+     */
+    static void hash(int[] pixels, int from, int to, boolean argb, int[] hashes, int position){
+        KERNELS.hash(pixels, from, to, argb, hashes, position);
+    }
+
+    /**
+     * Length of the run of pixels equal to the pixel preceding a span
+     * @param pixels (int[]) - Packed pixels
+     * @param from (int) - Index of the first pixel of the span, the pixel at from - 1 is the one repeated
+     * @param to (int) - Index of the last pixel of the span (exclusive)
+     * @return (int) - Number of pixels from the index from equal to the pixel at from - 1
+     */
+    static int run(int[] pixels, int from, int to){
+        return KERNELS.run(pixels, from, to);
+    }
+
+    // ============================================================================================
+
+    /**
+     * Reference implementation, one channel of one pixel at a time
+     */
+    private static final class Scalar implements Kernels {
+
+        @Override
+        public void argbToRgba(int[] src, int srcPos, int[] dst, int dstPos, int length){
+            for (int i = 0 ; i < length ; ++i){
+                int pixel = src[srcPos + i];
+                dst[dstPos + i] = (pixel >>> 16 & 0xFF) << 24 | (pixel >>> 8 & 0xFF) << 16 |
+                        (pixel & 0xFF) << 8 | (pixel >>> 24);
+            }
+        }
+
+        @Override
+        public void rgbaToArgb(int[] src, int srcPos, int[] dst, int dstPos, int length){
+            for (int i = 0 ; i < length ; ++i){
+                int pixel = src[srcPos + i];
+                dst[dstPos + i] = (pixel & 0xFF) << 24 | (pixel >>> 24) << 16 |
+                        (pixel >>> 16 & 0xFF) << 8 | (pixel >>> 8 & 0xFF);
+            }
+        }
+
+        @Override
+        public int hash(int pixel){
+            return ((pixel >>> 24) * 3 + (pixel >>> 16 & 0xFF) * 5 + (pixel >>> 8 & 0xFF) * 7 + (pixel & 0xFF) * 11) & 0x3F;
+        }
+
+        @Override
+        public void hash(int[] pixels, int from, int to, boolean argb, int[] hashes, int position){
+            for (int i = from ; i < to ; ++i){
+                hashes[position + i - from] = hash(argb ? Integer.rotateLeft(pixels[i], 8) : pixels[i]);
+            }
+        }
+
+        @Override
+        public int run(int[] pixels, int from, int to){
+            int value = pixels[from - 1];
+            int i = from;
+            while ((i < to) && (pixels[i] == value)){
+                ++i;
+            }
+            return i - from;
+        }
+    }
+
+    /**
+     * Whole packed pixels at a time, in plain scalar code
+     */
+    private static final class Packed implements Kernels {
+
+        @Override
+        public void argbToRgba(int[] src, int srcPos, int[] dst, int dstPos, int length){
+            for (int i = 0 ; i < length ; ++i){
+                dst[dstPos + i] = Integer.rotateLeft(src[srcPos + i], 8);
+            }
+        }
+
+        @Override
+        public void rgbaToArgb(int[] src, int srcPos, int[] dst, int dstPos, int length){
+            for (int i = 0 ; i < length ; ++i){
+                dst[dstPos + i] = Integer.rotateRight(src[srcPos + i], 8);
+            }
+        }
+
+        @Override
+        public int hash(int pixel){
+            // The channels are summed two by two in the upper 16 bits of two products :
+            // g * 5 + a * 11 and r * 3 + b * 7
+            return ((pixel & 0x00FF00FF) * 0x000B0005 + (pixel >>> 8 & 0x00FF00FF) * 0x00070003) >>> 16 & 0x3F;
+        }
+
+        @Override
+        public void hash(int[] pixels, int from, int to, boolean argb, int[] hashes, int position){
+            for (int i = from ; i < to ; ++i){
+                hashes[position + i - from] = hash(argb ? Integer.rotateLeft(pixels[i], 8) : pixels[i]);
+            }
+        }
+
+        @Override
+        public int run(int[] pixels, int from, int to){
+            int mismatch = Arrays.mismatch(pixels, from, to, pixels, from - 1, to - 1);
+            return (mismatch < 0) ? to - from : mismatch;
+        }
+    }
+
+}
@@ -0,0 +1,208 @@
+package cs107;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Catalogue of the "Quite Ok Image" files of a directory tree : path, size and header of each file.
+ * Only the header of each file is read (See QOIDecoder::probe), the headers of a batch of files
+ * are read in parallel in the common ForkJoin pool and the catalogue is written batch after batch,
+ * so the memory used does not depend on the number of files.
+ * A file or directory of the tree that cannot be read is skipped and counted, the scan goes on with the next ones.
+ * See QOISpecification::QOI_CATALOGUE_MAGIC for the layout of the catalogue.
+ */
+public final class QOICatalogue {
+
+    /**
+     * Number of files whose headers are read in parallel before being written to the catalogue
+     */
+    private static final int BATCH_SIZE = 4096;
+
+    /**
+     * File of a catalogue
+     * @param path (String) - Path of the file, relative to the scanned directory, with '/' as separator
+     * @param size (long) - Size of the file in bytes
+     * @param width (int) - Width of the image
+     * @param height (int) - Height of the image
+     * @param channels (byte) - Number of channels
+     * @param colorSpace (byte) - Color space
+     */
+    public record Entry(String path, long size, int width, int height, byte channels, byte colorSpace){}
+
+    /**
+     * Result of a scan
+     * @param files (long) - Number of files in the catalogue
+     * @param failures (long) - Number of files or directories of the tree that could not be read during the walk
+     */
+    public record Summary(long files, long failures){}
+
+    // Hide default constructor
+    private QOICatalogue(){}
+
+    /**
+     * Scan a directory tree and write the catalogue of its "Quite Ok Image" files.
+     * The regular files are recognized by their header, whatever their extension, the other files are skipped,
+     * as the files and directories that cannot be read (the scan goes on with the next ones)
+     * @param directory (Path) - Root of the tree to scan
+     * @param catalogue (Path) - File where to write the catalogue
+     * @return (Summary) - Number of files in the catalogue and of entries of the tree that could not be read
+     * @throws AssertionError if one of the paths is null
+     * @throws IOException if the root directory cannot be walked or the catalogue cannot be written
+     */
+    public static Summary scan(Path directory, Path catalogue) throws IOException {
+        assert (directory != null) && (catalogue != null);
+
+        try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(catalogue), 1 << 16))){
+            output.write(QOISpecification.QOI_CATALOGUE_MAGIC);
+            var walk = new Walk(directory, catalogue.toAbsolutePath(), output);
+            Files.walkFileTree(directory, walk);
+            walk.flush();
+            return new Summary(walk.files, walk.failures);
+        }
+    }
+
+    /**
+     * Read a catalogue written by QOICatalogue::scan
+     * @param catalogue (Path) - Path of the catalogue
+     * @return (List<Entry>) - Files of the catalogue, in the order of the scan
+     * @throws AssertionError if catalogue is null
+     * @throws IOException if the catalogue cannot be read or is not a catalogue
+     */
+    public static List<Entry> read(Path catalogue) throws IOException {
+        assert catalogue != null;
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(catalogue), 1 << 16))){
+            var magic = input.readNBytes(QOISpecification.QOI_CATALOGUE_MAGIC.length);
+            if (!Arrays.equals(magic, QOISpecification.QOI_CATALOGUE_MAGIC))
+                throw new IOException("Not a QOI catalogue : " + catalogue);
+            var entries = new ArrayList<Entry>();
+            int length;
+            while ((length = input.read()) >= 0){
+                length = length << 8 | input.readUnsignedByte();
+                var path = new String(input.readNBytes(length), StandardCharsets.UTF_8);
+                var size = input.readLong();
+                var width = input.readInt();
+                var height = input.readInt();
+                var channels = input.readByte();
+                var colorSpace = input.readByte();
+                entries.add(new Entry(path, size, width, height, channels, colorSpace));
+            }
+            return entries;
+        } catch (EOFException e){
+            throw new IOException("Truncated QOI catalogue : " + catalogue, e);
+        }
+    }
+
+    /**
+     * Read the headers of a batch of files in parallel
+     * @param directory (Path) - Root of the scanned tree
+     * @param batch (List<Path>) - Files to probe
+     * @param sizes (long[]) - Size of each file, as seen by the walk
+     * @return (Entry[]) - Entry of each file, null for the files that are not "Quite Ok Image" files
+     * or cannot be read
+     */
+    static Entry[] probe(Path directory, List<Path> batch, long[] sizes){
+        var entries = new Entry[batch.size()];
+        IntStream.range(0, entries.length).parallel().forEach(i -> {
+            var file = batch.get(i);
+            try {
+                var header = QOIDecoder.probe(file);
+                if (header != null){
+                    var path = directory.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+                    entries[i] = new Entry(path, sizes[i], header[0], header[1], (byte) header[2], (byte) header[3]);
+                }
+            } catch (IOException e){
+                // Skipped : unreadable, or removed since the walk
+            }
+        });
+        return entries;
+    }
+
+    /**
+     * Walk of the scanned tree, the regular files are probed and written to the catalogue batch after batch.
+     * The attributes read by the walk give the size of each file
+     */
+    private static final class Walk extends SimpleFileVisitor<Path> {
+
+        private final Path directory;
+        private final Path catalogue;
+        private final DataOutputStream output;
+        private final List<Path> batch = new ArrayList<>(BATCH_SIZE);
+        private final long[] sizes = new long[BATCH_SIZE];
+        private long files = 0;
+        private long failures = 0;
+
+        Walk(Path directory, Path catalogue, DataOutputStream output){
+            this.directory = directory;
+            this.catalogue = catalogue;
+            this.output = output;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+            if (attributes.isSymbolicLink()){
+                // The links are not followed by the walk, the catalogue lists the regular files they point to
+                try {
+                    attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                } catch (IOException e){
+                    return FileVisitResult.CONTINUE;
+                }
+            }
+            if (attributes.isRegularFile() && !file.toAbsolutePath().equals(catalogue)){
+                sizes[batch.size()] = attributes.size();
+                batch.add(file);
+                if (batch.size() == BATCH_SIZE)
+                    flush();
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+            // An unreadable or vanished file or directory of the tree is skipped, not the root itself
+            if (file.equals(directory))
+                throw e;
+            ++failures;
+            return FileVisitResult.CONTINUE;
+        }
+
+        void flush() throws IOException {
+            files += write(output, probe(directory, batch, sizes));
+            batch.clear();
+        }
+    }
+
+    private static int write(DataOutputStream output, Entry[] entries) throws IOException {
+        int count = 0;
+        for (var entry : entries){
+            if (entry == null)
+                continue;
+            var path = entry.path().getBytes(StandardCharsets.UTF_8);
+            if (path.length > 0xFFFF)
+                throw new IOException("Path too long for a QOI catalogue : " + entry.path());
+            output.writeShort(path.length);
+            output.write(path);
+            output.writeLong(entry.size());
+            output.writeInt(entry.width());
+            output.writeInt(entry.height());
+            output.writeByte(entry.channels());
+            output.writeByte(entry.colorSpace());
+            ++count;
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,46 @@
+package cs107;
+
+/**
+ * Per thread instances of QOIReusableEncoder and QOIReusableDecoder, for servers
+ * encoding and decoding images on a fixed set of worker threads.
+ * Each thread gets its own encoder and decoder the first time it asks for them and keeps them,
+ * so that in steady state a request does not allocate any buffer.
+ * The buffers grown for images larger than QOICodecPool::MAX_RETAINED_PIXELS are released when the
+ * instance is taken again, to bound the memory kept by each thread.
+ * @apiNote An instance must not be used outside of the thread that got it, nor kept after
+ * the next call to QOICodecPool::encoder or QOICodecPool::decoder on the same thread.
+ */
+public final class QOICodecPool {
+
+    /**
+     * Largest image (in pixels) for which the buffers are kept between two requests
+     */
+    public static final int MAX_RETAINED_PIXELS = 1 << 24;
+
+    private static final ThreadLocal<QOIReusableEncoder> ENCODERS = ThreadLocal.withInitial(QOIReusableEncoder::new);
+
+    private static final ThreadLocal<QOIReusableDecoder> DECODERS = ThreadLocal.withInitial(QOIReusableDecoder::new);
+
+    // Hide default constructor
+    private QOICodecPool(){}
+
+    /**
+     * @return (QOIReusableEncoder) - Encoder of the current thread
+     */
+    public static QOIReusableEncoder encoder(){
+        var encoder = ENCODERS.get();
+        encoder.trim(QOISpecification.HEADER_SIZE + QOIEncoder.maxDataSize(MAX_RETAINED_PIXELS)
+                + QOISpecification.QOI_EOF.length);
+        return encoder;
+    }
+
+    /**
+     * @return (QOIReusableDecoder) - Decoder of the current thread
+     */
+    public static QOIReusableDecoder decoder(){
+        var decoder = DECODERS.get();
+        decoder.trim(MAX_RETAINED_PIXELS);
+        return decoder;
+    }
+
+}
@@ -1,5 +1,20 @@
 package cs107;
 
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
 import static cs107.Helper.Image;
 
 /**
@@ -29,23 +44,49 @@ public final class QOIDecoder {
     public static int[] decodeHeader(byte[] header){
         assert header != null;
         assert header.length == QOISpecification.HEADER_SIZE;
-        assert ArrayUtils.equals(ArrayUtils.extract(header,0,4),QOISpecification.QOI_MAGIC);
+        assert Arrays.equals(header, 0, 4, QOISpecification.QOI_MAGIC, 0, 4);
         assert (header[12] == QOISpecification.RGB)||(header[12] == QOISpecification.RGBA);
         assert (header[13] == QOISpecification.ALL)||(header[13] == QOISpecification.sRGB);
 
+        long start = QOIStatistics.start();
         int [] decodeHeader = new int[4];
 
-        byte [] width = ArrayUtils.extract(header,4,4);
-        byte [] height = ArrayUtils.extract(header,8,4);
-
-        decodeHeader [0] = ArrayUtils.toInt(width);
-        decodeHeader [1] = ArrayUtils.toInt(height);
+        decodeHeader [0] = readInt(header, 4);
+        decodeHeader [1] = readInt(header, 8);
         decodeHeader [2] = header[12];
         decodeHeader [3] = header[13];
 
+        if (QOIStatistics.ENABLED)
+            QOIStatistics.time(QOIStatistics.Phase.HEADER, start);
         return decodeHeader;
     }
 
+    /**
+     * Read the header of a "Quite Ok Image" file without reading the rest of the file.
+     * Only the first QOISpecification::HEADER_SIZE bytes are read, with a positional read of the channel
+     * @param path (Path) - Path of the file
+     * @return (int[]) - Array such as its content is {width, height, channels, color space}
+     * (as QOIDecoder::decodeHeader), or null if the file is not a "Quite Ok Image" file
+     * @throws AssertionError if path is null
+     * @throws IOException if the file cannot be read
+     */
+    public static int[] probe(Path path) throws IOException {
+        assert path != null;
+        byte [] header = new byte[QOISpecification.HEADER_SIZE];
+        var buffer = ByteBuffer.wrap(header);
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)){
+            while (buffer.hasRemaining()){
+                if (channel.read(buffer, buffer.position()) < 0)
+                    return null;
+            }
+        }
+        if (!Arrays.equals(header, 0, 4, QOISpecification.QOI_MAGIC, 0, 4)
+                || ((header[12] != QOISpecification.RGB) && (header[12] != QOISpecification.RGBA))
+                || ((header[13] != QOISpecification.ALL) && (header[13] != QOISpecification.sRGB)))
+            return null;
+        return new int[]{readInt(header, 4), readInt(header, 8), header[12], header[13]};
+    }
+
     // ==================================================================================
     // =========================== ATOMIC DECODING METHODS ==============================
     // ==================================================================================
@@ -191,6 +232,7 @@ public final class QOIDecoder {
 
     /**
      * Decode the given data using the "Quite Ok Image" Protocol
+     * @apiNote Thin wrapper around QOIDecoder::decodeData(byte[], int, int, int[], int, int)
      * @param data (byte[]) - Data to decode
      * @param width (int) - The width of the expected output
      * @param height (int) - The height of the expected output
@@ -201,115 +243,499 @@ public final class QOIDecoder {
         assert data != null;
         assert (width > 0)&&(height > 0);
 
-        byte [] precedent = new byte[4];
-        ArrayUtils.newPrecedent(precedent,QOISpecification.START_PIXEL);
-        byte [][] hashTable = new byte[64][4];
-        byte [][] buffer = new byte[width*height][4];
-        int position = 0;
+        int [] pixels = new int[width*height];
+        QOIDecoder.decodeData(data, 0, data.length, pixels, 0, pixels.length);
 
-        for (int i = 0 ; i < data.length ; ++i){
+        byte [][] buffer = new byte[pixels.length][4];
+        for (int i = 0 ; i < pixels.length ; ++i){
+            buffer[i][0] = (byte) (pixels[i] >>> 24);
+            buffer[i][1] = (byte) (pixels[i] >>> 16);
+            buffer[i][2] = (byte) (pixels[i] >>> 8);
+            buffer[i][3] = (byte) pixels[i];
+        }
+        return buffer;
+    }
 
-            if (((byte) (data[i] & 0xC0) == QOISpecification.QOI_OP_RUN_TAG) &&
-                    ((data[i]) != QOISpecification.QOI_OP_RGB_TAG) &&
-                    ((data[i]) != QOISpecification.QOI_OP_RGBA_TAG)){
-                position += QOIDecoder.decodeQoiOpRun(buffer,precedent,data[i],position);
-                ++position;
-            } else {
+    /**
+     * Decode the given data using the "Quite Ok Image" Protocol directly into
+     * an array of RGBA packed pixels (red in the most significant byte).
+     * Nothing is allocated per pixel.
+     * @param data (byte[]) - Data to decode
+     * @param from (int) - Index of the first byte to decode (inclusive)
+     * @param to (int) - Index of the last byte to decode (exclusive)
+     * @param pixels (int[]) - Array where to store the decoded pixels
+     * @param position (int) - Index in pixels where to store the first decoded pixel
+     * @param count (int) - Number of pixels to decode
+     * @return (int) - The number of consumed bytes
+     * @throws AssertionError if one of the arrays is null, the indices are invalid
+     * or the data does not contain count pixels
+     */
+    public static int decodeData(byte[] data, int from, int to, int[] pixels, int position, int count){
+        assert (data != null) && (pixels != null);
+        assert (from >= 0) && (from <= to) && (to <= data.length);
+        assert (position >= 0) && (count >= 0) && (position + count <= pixels.length);
+
+        QOIDecoderState state = new QOIDecoderState();
+        int p = state.decode(data, from, to, pixels, position, position + count);
+        assert p == position + count;
+        return state.next() - from;
+    }
+
+    /**
+     * Decode the given data using the "Quite Ok Image" Protocol into a buffer of
+     * RGBA packed pixels. Both buffers are read and written from their current position.
+     * @apiNote To decode into a (direct) ByteBuffer with the R, G, B, A byte order,
+     * use ByteBuffer::asIntBuffer on a big endian buffer.
+     * To decode into an array, use IntBuffer::wrap.
+     * @param data (ByteBuffer) - Data to decode, consumed up to the last decoded chunk
+     * @param pixels (IntBuffer) - Buffer where to store the decoded pixels, filled until it has no space remaining
+     * @throws AssertionError if one of the buffers is null
+     * @throws BufferUnderflowException if the data does not contain enough pixels
+     */
+    public static void decodeData(ByteBuffer data, IntBuffer pixels){
+        assert (data != null) && (pixels != null);
+
+        new QOIDecoderState().decode(data, pixels);
+        if (pixels.hasRemaining())
+            throw new BufferUnderflowException();
+    }
+
+    /**
+     * Decode a file using the "Quite Ok Image" Protocol
+     * @apiNote Adapter around QOIDecoder::decodeQoiImage
+     * @param content (byte[]) - Content of the file to decode
+     * @return (Image) - Decoded image
+     * @throws AssertionError if content is null
+     */
+    public static Image decodeQoiFile(byte[] content){
+        assert content != null;
+
+        return QOIDecoder.decodeQoiImage(content).toImage();
+    }
+
+    /**
+     * Decode a file using the "Quite Ok Image" Protocol into one contiguous array
+     * @param content (byte[]) - Content of the file to decode
+     * @return (Helper.PixelImage) - Decoded image, stored as RGBA packed pixels without padding
+     * @throws AssertionError if content is null or is not a valid "Quite Ok Image" file
+     */
+    public static Helper.PixelImage decodeQoiImage(byte[] content){
+        assert content != null;
+        assert content.length >= QOISpecification.HEADER_SIZE + QOISpecification.QOI_EOF.length;
+        int end = content.length - QOISpecification.QOI_EOF.length;
+        assert Arrays.equals(content, end, content.length, QOISpecification.QOI_EOF, 0, QOISpecification.QOI_EOF.length);
+
+        var event = new QOIEvents.Decode();
+        event.begin();
+        int [] header = QOIDecoder.decodeHeader(Arrays.copyOf(content, QOISpecification.HEADER_SIZE));
+        int width = header[0];
+        int height = header[1];
+        byte channels = (byte) header[2];
+        byte colorSpace = (byte) header[3];
+
+        int [] pixels = new int[width*height];
+        QOIDecoder.decodeData(content, QOISpecification.HEADER_SIZE, end, pixels, 0, pixels.length);
+        event.commit(width, height, channels, content.length, 4L * pixels.length);
+        return new Helper.PixelImage(pixels, width, height, Helper.PixelFormat.RGBA, channels, colorSpace);
+    }
+
+    /**
+     * Decode a file using the "Quite Ok Image" Protocol directly from a buffer,
+     * for instance a memory mapped file (See Helper::map)
+     * @param content (ByteBuffer) - Content of the file to decode, from its position to its limit.
+     * The position of the buffer is not modified
+     * @return (Helper.PixelImage) - Decoded image, stored as RGBA packed pixels without padding
+     * @throws AssertionError if content is null or is not a valid "Quite Ok Image" file
+     */
+    public static Helper.PixelImage decodeQoiImage(ByteBuffer content){
+        assert content != null;
+        var data = content.duplicate();
+        assert data.remaining() >= QOISpecification.HEADER_SIZE + QOISpecification.QOI_EOF.length;
+
+        byte [] header = new byte[QOISpecification.HEADER_SIZE];
+        data.get(header);
+        int [] decoded = QOIDecoder.decodeHeader(header);
+        int width = decoded[0];
+        int height = decoded[1];
+        data.limit(data.limit() - QOISpecification.QOI_EOF.length);
+
+        int [] pixels = new int[width*height];
+        QOIDecoder.decodeData(data, IntBuffer.wrap(pixels));
+        return new Helper.PixelImage(pixels, width, height, Helper.PixelFormat.RGBA, (byte) decoded[2], (byte) decoded[3]);
+    }
+
+    /**
+     * Decode a file using the "Quite Ok Image" Protocol directly into the raster of a BufferedImage,
+     * ready to be displayed or written with ImageIO.
+     * <ul>
+     *     <li>4 channels : TYPE_4BYTE_ABGR, whose A, B, G, R bytes are the RGBA packed pixels
+     *     stored in little endian, so the pixels are decoded into a little endian view of the raster.</li>
+     *     <li>3 channels : TYPE_INT_RGB, the pixels are decoded into the raster and the alpha byte is shifted out.</li>
+     * </ul>
+     * @param content (ByteBuffer) - Content of the file to decode, from its position to its limit.
+     * The position of the buffer is not modified
+     * @return (BufferedImage) - Decoded image
+     * @throws AssertionError if content is null or is not a valid "Quite Ok Image" file
+     */
+    public static BufferedImage decodeBufferedImage(ByteBuffer content){
+        assert content != null;
+        var data = content.duplicate();
+        assert data.remaining() >= QOISpecification.HEADER_SIZE + QOISpecification.QOI_EOF.length;
+        var event = new QOIEvents.Decode();
+        event.begin();
+
+        byte [] header = new byte[QOISpecification.HEADER_SIZE];
+        data.get(header);
+        int [] decoded = QOIDecoder.decodeHeader(header);
+        int width = decoded[0];
+        int height = decoded[1];
+        data.limit(data.limit() - QOISpecification.QOI_EOF.length);
+
+        BufferedImage image;
+        if (decoded[2] == QOISpecification.RGB){
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            int [] raster = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            QOIDecoder.decodeData(data, IntBuffer.wrap(raster));
+            for (int i = 0 ; i < raster.length ; ++i){
+                raster[i] >>>= 8;
+            }
+        } else {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
+            byte [] raster = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            QOIDecoder.decodeData(data, ByteBuffer.wrap(raster).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer());
+        }
+        event.commit(width, height, decoded[2], content.remaining(), 4L * width * height);
+        return image;
+    }
+
+    /**
+     * Decode a file using the "Quite Ok Image" Protocol directly into the raster of a BufferedImage
+     * @apiNote Adapter around QOIDecoder::decodeBufferedImage(ByteBuffer)
+     * @param content (byte[]) - Content of the file to decode
+     * @return (BufferedImage) - Decoded image
+     * @throws AssertionError if content is null or is not a valid "Quite Ok Image" file
+     */
+    public static BufferedImage decodeBufferedImage(byte[] content){
+        assert content != null;
+        return QOIDecoder.decodeBufferedImage(ByteBuffer.wrap(content));
+    }
+
+    /**
+     * Number of chunk boundaries recorded per segment by QOIDecoder::decodeQoiImageParallel
+     */
+    private static final int MARKS_PER_SEGMENT = 8;
 
-                if ((byte) (data[i] & 0xC0) == QOISpecification.QOI_OP_INDEX_TAG){
-                    int index = (data[i] & 0x3F);
-                    for (int j = 0 ; j < 4 ; ++j){
-                        buffer[position][j] = hashTable [index][j];
+    /**
+     * Number of chunk boundaries before a segment decoded to rebuild its starting state
+     */
+    private static final int WARM_UP_MARKS = 2;
+
+    /**
+     * Number of segments per core decoded in parallel before their fix-up by QOIDecoder::decodeQoiImageParallel
+     */
+    private static final int SEGMENTS_PER_WAVE = 2;
+
+    /**
+     * The speculation stops when more than 1 / MAX_FAILURES of the segments of a wave are decoded again
+     */
+    private static final int MAX_FAILURES = 4;
+
+    /**
+     * Decode a standard "Quite Ok Image" file using several cores.
+     * <ol>
+     *     <li>A cheap sequential pass over the tag bytes records a chunk boundary (byte offset and pixel index)
+     *     every segmentPixels / 8 pixels.</li>
+     *     <li>The segments between the boundaries are decoded in parallel in the common ForkJoin pool,
+     *     by waves of 2 segments per core.
+     *     Their starting state (previous pixel and hash table) is not known yet, so each segment first
+     *     decodes a few boundaries before its start, from the state of the beginning of an image,
+     *     which in practice rebuilds the right previous pixel and hash table.</li>
+     *     <li>After each wave, a fix-up pass checks, segment after segment, that the rebuilt starting state is exactly
+     *     the state the previous segment ended with, and decodes again the segments for which it is not.
+     *     If more than a quarter of the segments of the wave are decoded again, the speculation does not pay
+     *     for this image and the rest of the image is decoded sequentially, without other wave.</li>
+     * </ol>
+     * The result is always the same as QOIDecoder::decodeQoiImage.
+     * @apiNote Only worth it for large images on several cores : the speculation costs about 1.3 to 1.7 times
+     * the work of a sequential decoding, on top of the scan of the tags.
+     * With a single core or a single segment, the file is decoded with QOIDecoder::decodeQoiImage.
+     * The images whose segments refer to colours older than the warm-up (long runs of transparent pixels,
+     * few colours reused through QOI_OP_INDEX across the whole image) fall back to a sequential decoding
+     * after the first wave and are then slower than QOIDecoder::decodeQoiImage : do not use this method for them.
+     * @param content (byte[]) - Content of the file to decode
+     * @param segmentPixels (int) - Approximate number of pixels per segment
+     * @return (Helper.PixelImage) - Decoded image, stored as RGBA packed pixels without padding
+     * @throws AssertionError if content is null, is not a valid "Quite Ok Image" file or segmentPixels is not positive
+     */
+    public static Helper.PixelImage decodeQoiImageParallel(byte[] content, int segmentPixels){
+        return QOIDecoder.decodeQoiImageParallel(content, segmentPixels, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * Decode a standard "Quite Ok Image" file using several cores
+     * @apiNote See QOIDecoder::decodeQoiImageParallel(byte[], int)
+     * @param content (byte[]) - Content of the file to decode
+     * @param segmentPixels (int) - Approximate number of pixels per segment
+     * @param parallelism (int) - Number of cores, which sets the number of segments per wave
+     * @return (Helper.PixelImage) - Decoded image, stored as RGBA packed pixels without padding
+     * @throws AssertionError if content is null, is not a valid "Quite Ok Image" file
+     * or segmentPixels or parallelism is not positive
+     */
+    static Helper.PixelImage decodeQoiImageParallel(byte[] content, int segmentPixels, int parallelism){
+        assert content != null;
+        assert (segmentPixels > 0) && (parallelism > 0);
+        assert content.length >= QOISpecification.HEADER_SIZE + QOISpecification.QOI_EOF.length;
+        int end = content.length - QOISpecification.QOI_EOF.length;
+        assert Arrays.equals(content, end, content.length, QOISpecification.QOI_EOF, 0, QOISpecification.QOI_EOF.length);
+
+        int [] header = QOIDecoder.decodeHeader(Arrays.copyOf(content, QOISpecification.HEADER_SIZE));
+        int width = header[0];
+        int height = header[1];
+        if ((parallelism == 1) || ((long) width * height <= segmentPixels))
+            return QOIDecoder.decodeQoiImage(content);
+        int [] pixels = new int[width*height];
+
+        // 1. Scan of the tag bytes
+        int step = Math.max(1, segmentPixels / MARKS_PER_SEGMENT);
+        int [] offsets = new int[16];
+        int [] positions = new int[16];
+        int marks = 0;
+        int i = QOISpecification.HEADER_SIZE;
+        int p = 0;
+        int nextMark = 0;
+        while ((p < pixels.length) && (i < end)){
+            if (p >= nextMark){
+                if (marks == offsets.length){
+                    offsets = Arrays.copyOf(offsets, 2 * marks);
+                    positions = Arrays.copyOf(positions, 2 * marks);
+                }
+                offsets[marks] = i;
+                positions[marks] = p;
+                ++marks;
+                nextMark = p + step;
+            }
+            int chunk = content[i] & 0xFF;
+            if (chunk == (QOISpecification.QOI_OP_RGB_TAG & 0xFF)){
+                i += 4;
+                ++p;
+            } else if (chunk == (QOISpecification.QOI_OP_RGBA_TAG & 0xFF)){
+                i += 5;
+                ++p;
+            } else {
+                switch (chunk >>> 6){
+                    case 0b10 -> i += 2;
+                    case 0b11 -> {
+                        p += chunk & 0x3F;
+                        ++i;
+                    }
+                    default -> ++i;
+                }
+                ++p;
+            }
+        }
+        assert p >= pixels.length;
+
+        // 2. Speculative decoding of the segments, wave after wave
+        int segments = (marks + MARKS_PER_SEGMENT - 1) / MARKS_PER_SEGMENT;
+        int [] starts = new int[segments + 1];
+        int [] firstPixels = new int[segments + 1];
+        for (int k = 0 ; k < segments ; ++k){
+            starts[k] = offsets[k * MARKS_PER_SEGMENT];
+            firstPixels[k] = positions[k * MARKS_PER_SEGMENT];
+        }
+        starts[segments] = end;
+        firstPixels[segments] = pixels.length;
+        int [] warmUps = new int[segments];
+        for (int k = 0 ; k < segments ; ++k){
+            warmUps[k] = Math.max(0, k * MARKS_PER_SEGMENT - WARM_UP_MARKS);
+        }
+        int [] warmUpOffsets = offsets;
+        int [] warmUpPositions = positions;
+
+        int wave = SEGMENTS_PER_WAVE * parallelism;
+        QOIDecoderState.Checkpoint truth = null;
+        for (int from = 0 ; from < segments ; from += wave){
+            int to = Math.min(segments, from + wave);
+            Speculation [] speculations = IntStream.range(from, to).parallel().mapToObj(k -> {
+                QOIDecoderState state = new QOIDecoderState();
+                int warmUp = warmUps[k];
+                if (k > 0){
+                    // Unknown pixels are guessed opaque, so that an opaque image never decodes transparent pixels
+                    int [] table = new int[64];
+                    Arrays.fill(table, QOISpecification.START_PIXEL_RGBA);
+                    state.restore(new QOIDecoderState.Checkpoint(warmUpOffsets[warmUp], warmUpPositions[warmUp],
+                            QOISpecification.START_PIXEL_RGBA, 0, table));
+                }
+                state.decode(content, warmUpOffsets[warmUp], end, null, warmUpPositions[warmUp], firstPixels[k]);
+                var guess = state.checkpoint(starts[k], firstPixels[k]);
+                state.decode(content, starts[k], end, pixels, firstPixels[k], firstPixels[k + 1]);
+                var last = state.checkpoint(state.next(), firstPixels[k + 1]);
+                return speculation(content, pixels, guess, last);
+            }).toArray(Speculation[]::new);
+
+            // 3. Fix-up of the segments whose starting state was not rebuilt exactly
+            int failures = 0;
+            for (int k = from ; k < to ; ++k){
+                var segment = speculations[k - from];
+                if (k == 0){
+                    truth = segment.last();
+                    continue;
+                }
+                var guess = segment.guess();
+                var valid = !segment.precedentRead() || (guess.precedent() == truth.precedent());
+                for (long read = segment.read() ; valid && (read != 0) ; read &= read - 1){
+                    var slot = Long.numberOfTrailingZeros(read);
+                    valid = guess.hashTable()[slot] == truth.hashTable()[slot];
+                }
+                if (valid){
+                    // The slots the segment has not written still hold the values of the true starting state
+                    var last = segment.last();
+                    for (long kept = ~segment.written() ; kept != 0 ; kept &= kept - 1){
+                        var slot = Long.numberOfTrailingZeros(kept);
+                        last.hashTable()[slot] = truth.hashTable()[slot];
                     }
-                    ArrayUtils.newPrecedent(precedent,hashTable[index]);
-                    ++position;
+                    truth = last;
                 } else {
+                    ++failures;
+                    QOIDecoderState state = new QOIDecoderState();
+                    state.uncounted();
+                    state.restore(truth);
+                    state.decode(content, starts[k], end, pixels, firstPixels[k], firstPixels[k + 1]);
+                    truth = state.checkpoint(state.next(), firstPixels[k + 1]);
+                }
+            }
+
+            // 4. Sequential decoding of the rest of the image when the speculation fails too often
+            if ((MAX_FAILURES * failures > to - from) && (to < segments)){
+                QOIDecoderState state = new QOIDecoderState();
+                state.restore(truth);
+                state.decode(content, starts[to], end, pixels, firstPixels[to], pixels.length);
+                break;
+            }
+        }
+        return new Helper.PixelImage(pixels, width, height, Helper.PixelFormat.RGBA, (byte) header[2], (byte) header[3]);
+    }
 
-                    if ((byte) (data[i] & 0xC0) == QOISpecification.QOI_OP_DIFF_TAG){
-                        byte [] pixel = QOIDecoder.decodeQoiOpDiff(precedent,data[i]);
-                        int hashIdx = QOISpecification.hash(pixel);
-                        for (int j = 0 ; j < 4 ; ++j){
-                            buffer[position][j] = pixel [j];
-                            hashTable[hashIdx][j] = pixel[j];
-                        }
-                        ArrayUtils.newPrecedent(precedent,pixel);
-                        ++position;
-                    } else {
-
-                        if ((byte) (data[i] & 0xC0) == QOISpecification.QOI_OP_LUMA_TAG){
-                            byte [] lumaChunk = ArrayUtils.extract(data,i,2);
-                            byte [] pixel = QOIDecoder.decodeQoiOpLuma(precedent,lumaChunk);
-                            int hashIdx = QOISpecification.hash(pixel);
-                            for (int j = 0 ; j < 4 ; ++j){
-                                buffer[position][j] = pixel [j];
-                                hashTable[hashIdx][j] = pixel[j];
-                            }
-                            ArrayUtils.newPrecedent(precedent,pixel);
-                            ++position;
-                            ++i;
-                        } else {
-
-                            if (data[i] == QOISpecification.QOI_OP_RGB_TAG){
-                                int idx = i+1;
-                                i += QOIDecoder.decodeQoiOpRGB(buffer,data,precedent[3],position,idx);
-                                ++position;
-                                byte [] pixel = new byte[4];
-                                for (int j = 0 ; j < 3 ; ++j){
-                                    pixel[j] = data[idx+j];
-                                }
-                                pixel [3] = precedent[3];
-                                int hashIdx = QOISpecification.hash(pixel);
-                                for (int j = 0 ; j < 4 ; ++j){
-                                    hashTable[hashIdx][j] = pixel[j];
-                                }
-                                ArrayUtils.newPrecedent(precedent,pixel);
-                            } else {
-
-                                if (data[i] == QOISpecification.QOI_OP_RGBA_TAG){
-                                    int idx = i+1;
-                                    i += QOIDecoder.decodeQoiOpRGBA(buffer,data,position,idx);
-                                    ++position;
-                                    byte [] pixel = new byte[4];
-                                    for (int j = 0 ; j < 4 ; ++j){
-                                        pixel[j] = data[idx+j];
-                                    }
-                                    int hashIdx = QOISpecification.hash(pixel);
-                                    for (int j = 0 ; j < 4 ; ++j){
-                                        hashTable[hashIdx][j] = pixel[j];
-                                    }
-                                    ArrayUtils.newPrecedent(precedent,pixel);
-                                }
-                            }
-                        }
+    /**
+     * Result of the speculative decoding of a segment by QOIDecoder::decodeQoiImageParallel
+     * @param guess (QOIDecoderState.Checkpoint) - Rebuilt starting state of the segment
+     * @param last (QOIDecoderState.Checkpoint) - State at the end of the segment
+     * @param precedentRead (boolean) - true if the decoding of the segment depends on the starting previous pixel
+     * @param read (long) - Bit mask of the starting hash table slots the decoding of the segment depends on
+     * @param written (long) - Bit mask of the hash table slots written by the segment
+     */
+    private record Speculation(QOIDecoderState.Checkpoint guess, QOIDecoderState.Checkpoint last,
+                               boolean precedentRead, long read, long written){}
+
+    /**
+     * Find which parts of its starting state the decoding of a segment depends on.
+     * The chunks are walked with the decoded pixels until every slot of the hash table has been written,
+     * the remaining chunks cannot depend on the starting state any more.
+     * @param data (byte[]) - Encoded pixels
+     * @param pixels (int[]) - Decoded pixels (RGBA packed)
+     * @param guess (QOIDecoderState.Checkpoint) - Starting state of the segment
+     * @param last (QOIDecoderState.Checkpoint) - State at the end of the segment
+     * @return (Speculation) - Dependencies of the segment
+     */
+    private static Speculation speculation(byte[] data, int[] pixels, QOIDecoderState.Checkpoint guess,
+                                           QOIDecoderState.Checkpoint last){
+        int chunk = data[(int) guess.offset()] & 0xFF;
+        boolean precedentRead = (chunk != (QOISpecification.QOI_OP_RGBA_TAG & 0xFF)) && ((chunk >>> 6) != 0b00);
+        long read = 0;
+        long written = 0;
+        int i = (int) guess.offset();
+        int position = (int) guess.pixel();
+        while ((position < last.pixel()) && (written != -1L)){
+            chunk = data[i] & 0xFF;
+            if (chunk == (QOISpecification.QOI_OP_RGB_TAG & 0xFF)){
+                written |= 1L << QOISpecification.hash(pixels[position]);
+                i += 4;
+            } else if (chunk == (QOISpecification.QOI_OP_RGBA_TAG & 0xFF)){
+                written |= 1L << QOISpecification.hash(pixels[position]);
+                i += 5;
+            } else {
+                switch (chunk >>> 6){
+                    case 0b00 -> {
+                        read |= (1L << chunk) & ~written;
+                        ++i;
+                    }
+                    case 0b01 -> {
+                        written |= 1L << QOISpecification.hash(pixels[position]);
+                        ++i;
+                    }
+                    case 0b10 -> {
+                        written |= 1L << QOISpecification.hash(pixels[position]);
+                        i += 2;
+                    }
+                    default -> {
+                        position += chunk & 0x3F;
+                        ++i;
                     }
                 }
             }
+            ++position;
         }
-        assert position == (height*width);
-        return buffer;
+        return new Speculation(guess, last, precedentRead, read, written);
     }
 
     /**
-     * Decode a file using the "Quite Ok Image" Protocol
+     * Decode a banded "Quite Ok Image" file (See QOISpecification for the layout of the file).
+     * The bands are decoded in parallel in the common ForkJoin pool.
      * @param content (byte[]) - Content of the file to decode
-     * @return (Image) - Decoded image
-     * @throws AssertionError if content is null
+     * @return (Helper.PixelImage) - Decoded image, stored as RGBA packed pixels without padding
+     * @throws AssertionError if content is null or is not a valid banded "Quite Ok Image" file
      */
-    public static Image decodeQoiFile(byte[] content){
+    public static Helper.PixelImage decodeQoiBandedImage(byte[] content){
         assert content != null;
-        byte [] header = ArrayUtils.extract(content,0,14);
-        byte [] data = ArrayUtils.extract(content,14,(content.length-14-8));
-        byte [] eOF = ArrayUtils.extract(content,(content.length-8),8);
-        assert ArrayUtils.equals(eOF,QOISpecification.QOI_EOF);
-
-        int width = QOIDecoder.decodeHeader(header)[0];
-        int height = QOIDecoder.decodeHeader(header)[1];
-        byte channels = (byte) QOIDecoder.decodeHeader(header)[2];
-        byte colorSpace = (byte) QOIDecoder.decodeHeader(header)[3];
-
-        byte [][] imageDecoded = QOIDecoder.decodeData(data,width,height);
-        int [][] image = ArrayUtils.channelsToImage(imageDecoded,height,width);
-        return Helper.generateImage(image,channels,colorSpace);
+        assert content.length >= QOISpecification.HEADER_SIZE + 4 + QOISpecification.QOI_EOF.length;
+        assert QOIDecoder.isBanded(content);
+        int end = content.length - QOISpecification.QOI_EOF.length;
+        assert Arrays.equals(content, end, content.length, QOISpecification.QOI_EOF, 0, QOISpecification.QOI_EOF.length);
+
+        byte [] header = Arrays.copyOf(content, QOISpecification.HEADER_SIZE);
+        System.arraycopy(QOISpecification.QOI_MAGIC, 0, header, 0, QOISpecification.QOI_MAGIC.length);
+        int [] decoded = QOIDecoder.decodeHeader(header);
+        int width = decoded[0];
+        int height = decoded[1];
+        int bandHeight = QOIDecoder.readInt(content, QOISpecification.HEADER_SIZE);
+        assert bandHeight > 0;
+        int bands = (height + bandHeight - 1) / bandHeight;
+
+        int [] starts = new int[bands + 1];
+        starts[0] = QOISpecification.HEADER_SIZE + 4 * (bands + 1);
+        for (int band = 0 ; band < bands ; ++band){
+            starts[band + 1] = starts[band] + QOIDecoder.readInt(content, QOISpecification.HEADER_SIZE + 4 * (band + 1));
+        }
+        assert starts[bands] == end;
+
+        int [] pixels = new int[width*height];
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            int first = band * bandHeight;
+            int rows = Math.min(bandHeight, height - first);
+            QOIDecoder.decodeData(content, starts[band], starts[band + 1], pixels, first * width, rows * width);
+        });
+        return new Helper.PixelImage(pixels, width, height, Helper.PixelFormat.RGBA, (byte) decoded[2], (byte) decoded[3]);
+    }
+
+    /**
+     * Check if the content is a banded "Quite Ok Image" file
+     * @param content (byte[]) - Content of the file
+     * @return (boolean) - true if the content starts with QOISpecification::QOI_BANDED_MAGIC
+     */
+    public static boolean isBanded(byte[] content){
+        assert content != null;
+        return Arrays.equals(content, 0, Math.min(content.length, QOISpecification.QOI_BANDED_MAGIC.length),
+                QOISpecification.QOI_BANDED_MAGIC, 0, QOISpecification.QOI_BANDED_MAGIC.length);
+    }
+
+    /**
+     * Read a Big Endian integer
+     * @param input (byte[]) - Array to read from
+     * @param idx (int) - Index of the most significant byte
+     * @return (int) - The integer
+     */
+    private static int readInt(byte[] input, int idx){
+        return (input[idx] & 0xFF) << 24 | (input[idx+1] & 0xFF) << 16 | (input[idx+2] & 0xFF) << 8 | (input[idx+3] & 0xFF);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,229 @@
+package cs107;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * State of the "Quite Ok Image" decoding algorithm (previous pixel, pending run
+ * and hash table), kept between calls so that an image can be decoded in several spans.
+ * @apiNote Used by QOIDecoder and the streaming decoders, not thread safe
+ */
+final class QOIDecoderState {
+
+    /**
+     * Size of the blocks in which the buffers without a backing array are copied
+     */
+    private static final int BLOCK = 1 << 12;
+
+    private final int[] hashTable = new int[64];
+    private int precedent = QOISpecification.START_PIXEL_RGBA;
+    private int run = 0;
+    private int next = 0;
+    private final QOIStatistics.Tally tally = QOIStatistics.ENABLED ? new QOIStatistics.Tally() : null;
+    private boolean counted = true;
+
+    QOIDecoderState(){
+        if (QOIStatistics.ENABLED)
+            tally.begin();
+    }
+
+    /**
+     * Go back to the state of the beginning of an image
+     */
+    void reset(){
+        Arrays.fill(hashTable, 0);
+        precedent = QOISpecification.START_PIXEL_RGBA;
+        run = 0;
+        next = 0;
+        if (QOIStatistics.ENABLED)
+            tally.begin();
+    }
+
+    /**
+     * Leave the next decodings out of the statistics, for the chunks that are decoded again
+     * (See QOIStatistics)
+     */
+    void uncounted(){
+        counted = false;
+    }
+
+    /**
+     * Snapshot of the decoding state at a chunk boundary, from which the decoding can restart.
+     * The offset and the pixel are long so that a snapshot can locate a chunk of a file larger than an array
+     * (See QOIIndex)
+     * @param offset (long) - Index in the data (or offset in the file) of the next chunk
+     * @param pixel (long) - Index of the next pixel to decode
+     * @param precedent (int) - Previous pixel (RGBA packed)
+     * @param run (int) - Number of pixels of the last run not decoded yet
+     * @param hashTable (int[]) - Copy of the hash table (64 RGBA packed pixels)
+     */
+    record Checkpoint(long offset, long pixel, int precedent, int run, int[] hashTable){}
+
+    /**
+     * Take a snapshot of the state
+     * @param offset (long) - Index in the data (or offset in the file) of the next chunk
+     * @param pixel (long) - Index of the next pixel to decode
+     * @return (Checkpoint) - Snapshot of the state
+     */
+    Checkpoint checkpoint(long offset, long pixel){
+        return new Checkpoint(offset, pixel, precedent, run, hashTable.clone());
+    }
+
+    /**
+     * Go back to the state of a snapshot, the decoding then restarts from the chunk at Checkpoint::offset
+     * @param checkpoint (Checkpoint) - Snapshot to restore
+     */
+    void restore(Checkpoint checkpoint){
+        System.arraycopy(checkpoint.hashTable(), 0, hashTable, 0, hashTable.length);
+        precedent = checkpoint.precedent();
+        run = checkpoint.run();
+        if (QOIStatistics.ENABLED)
+            tally.follow();
+    }
+
+    /**
+     * Index in the data of the first chunk not consumed by the last call to QOIDecoderState::decode
+     * @return (int) - Index of the next chunk
+     */
+    int next(){
+        return next;
+    }
+
+    /**
+     * Decode the chunks starting in the given range of data, following the chunks already decoded
+     * with this state, until the pixels array is filled up to end.
+     * The chunk starting just before to must be complete in data.
+     * The part of a run that does not fit in pixels is kept for the next call.
+     * @param data (byte[]) - Data to decode
+     * @param from (int) - Index of the first chunk to decode
+     * @param to (int) - Index from which no new chunk is started
+     * @param pixels (int[]) - Array where to store the RGBA packed pixels,
+     * or null to only advance the state (nothing is stored, runs are skipped at once)
+     * @param position (int) - Index in pixels where to store the first decoded pixel
+     * @param end (int) - Index in pixels at which the decoding stops
+     * @return (int) - Index in pixels after the last decoded pixel
+     */
+    int decode(byte[] data, int from, int to, int[] pixels, int position, int end){
+        long start = QOIStatistics.start();
+        int [] hashTable = this.hashTable;
+        int precedent = this.precedent;
+        int i = from;
+        int p = position;
+
+        if (run > 0){
+            int count = Math.min(run, end - p);
+            if (pixels != null)
+                Arrays.fill(pixels, p, p + count, precedent);
+            p += count;
+            run -= count;
+        }
+
+        while ((p < end) && (i < to)){
+            int chunk = data[i++] & 0xFF;
+            switch (chunk >>> 6){
+                case 0b00 -> {
+                    precedent = hashTable[chunk];
+                    if (pixels != null)
+                        pixels[p] = precedent;
+                    ++p;
+                    continue;
+                }
+                case 0b01 -> precedent = QOISpecification.addDelta(precedent,
+                        (chunk >>> 4 & 0x03) - 2, (chunk >>> 2 & 0x03) - 2, (chunk & 0x03) - 2);
+                case 0b10 -> {
+                    int dg = (chunk & 0x3F) - 32;
+                    int drb = data[i++] & 0xFF;
+                    precedent = QOISpecification.addDelta(precedent,
+                            dg + (drb >>> 4) - 8, dg, dg + (drb & 0x0F) - 8);
+                }
+                default -> {
+                    if (chunk == (QOISpecification.QOI_OP_RGB_TAG & 0xFF)){
+                        precedent = (data[i] & 0xFF) << 24 | (data[i+1] & 0xFF) << 16 |
+                                (data[i+2] & 0xFF) << 8 | (precedent & 0xFF);
+                        i += 3;
+                    } else if (chunk == (QOISpecification.QOI_OP_RGBA_TAG & 0xFF)){
+                        precedent = (data[i] & 0xFF) << 24 | (data[i+1] & 0xFF) << 16 |
+                                (data[i+2] & 0xFF) << 8 | (data[i+3] & 0xFF);
+                        i += 4;
+                    } else {
+                        int length = (chunk & 0x3F) + 1;
+                        int count = Math.min(length, end - p);
+                        if (pixels != null)
+                            Arrays.fill(pixels, p, p + count, precedent);
+                        p += count;
+                        run = length - count;
+                        continue;
+                    }
+                }
+            }
+            hashTable[QOISpecification.hash(precedent)] = precedent;
+            if (pixels != null)
+                pixels[p] = precedent;
+            ++p;
+        }
+
+        this.precedent = precedent;
+        this.next = i;
+        if (QOIStatistics.ENABLED && (pixels != null) && counted){
+            tally.add(data, from, i, p - position, start);
+            QOIStatistics.decoded(tally);
+        }
+        return p;
+    }
+
+    /**
+     * Decode the chunks of a buffer, following the chunks already decoded with this state,
+     * until the pixels buffer is full or the data is exhausted.
+     * Both buffers are read and written from their current position.
+     * The buffers backed by an array are decoded in place, the other ones (direct or memory mapped
+     * buffers, views in another byte order) go through scratch arrays of QOIDecoderState::BLOCK elements.
+     * @param data (ByteBuffer) - Data to decode, consumed up to the first chunk not decoded
+     * @param pixels (IntBuffer) - Buffer where to store the RGBA packed pixels
+     * @throws BufferUnderflowException if the last chunk of the data is truncated
+     */
+    void decode(ByteBuffer data, IntBuffer pixels){
+        if (pixels.hasArray()){
+            int base = pixels.arrayOffset();
+            int p = decode(data, pixels.array(), base + pixels.position(), base + pixels.limit());
+            pixels.position(p - base);
+            return;
+        }
+        int [] block = new int[Math.min(BLOCK, pixels.remaining())];
+        while (pixels.hasRemaining()){
+            int count = Math.min(block.length, pixels.remaining());
+            int p = decode(data, block, 0, count);
+            pixels.put(block, 0, p);
+            if (p != count)
+                return;
+        }
+    }
+
+    private int decode(ByteBuffer data, int[] pixels, int position, int end){
+        int p = position;
+        if (data.hasArray()){
+            // A chunk is at most 5 bytes long : the chunks starting 4 bytes before the limit are complete,
+            // the last ones are decoded from a copy so that no byte after the limit is read
+            int base = data.arrayOffset();
+            int to = Math.max(data.position(), data.limit() - 4);
+            p = decode(data.array(), base + data.position(), base + to, pixels, p, end);
+            data.position(next - base);
+        }
+        byte [] block = null;
+        while ((p < end) && data.hasRemaining()){
+            if (block == null)
+                block = new byte[Math.min(BLOCK, data.remaining()) + 4];
+            int length = Math.min(block.length - 4, data.remaining());
+            boolean last = length == data.remaining();
+            data.get(data.position(), block, 0, length);
+            Arrays.fill(block, length, block.length, (byte) 0);
+            p = decode(block, 0, last ? length : length - 4, pixels, p, end);
+            if (next > length)
+                throw new BufferUnderflowException();
+            data.position(data.position() + next);
+        }
+        return p;
+    }
+
+}
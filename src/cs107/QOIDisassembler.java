@@ -0,0 +1,219 @@
+package cs107;
+
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Utility class used to disassemble "Quite Ok Image" files, chunk by chunk, in the style of Hexdump.
+ * Each chunk is printed on one line : offset and bytes (formatted by Hexdump), operation,
+ * index of its (first) pixel and pixel decoded by QOIDecoderState.
+ * <pre>
+ * 00000E : FE D7 D7 D7     | QOI_OP_RGB   | 0            | D7D7D7FF
+ * 000012 : C2              | QOI_OP_RUN   | 1 (x3)       | D7D7D7FF
+ * </pre>
+ * The file is read through a small buffer and the lines are formatted in a reused buffer flushed to the output,
+ * so the memory used does not depend on the size of the file. Without output, only the summary is computed.
+ */
+public final class QOIDisassembler {
+
+    /**
+     * Size of the input buffer and of the output buffer
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final String[] NAMES = {
+            "QOI_OP_RUN  ", "QOI_OP_INDEX", "QOI_OP_DIFF ", "QOI_OP_LUMA ", "QOI_OP_RGB  ", "QOI_OP_RGBA "
+    };
+
+    /**
+     * Summary of a disassembled file
+     * @param width (int) - Width of the image
+     * @param height (int) - Height of the image
+     * @param channels (byte) - Number of channels
+     * @param colorSpace (byte) - Color space
+     * @param bytes (long) - Number of bytes of the chunks
+     * @param pixels (long) - Number of pixels of the chunks
+     * @param ops (long[]) - Number of chunks of each operation, indexed by QOIStatistics.Op::ordinal
+     * @param complete (boolean) - true if the chunks hold all the pixels of the image and are followed by QOI_EOF
+     */
+    public record Summary(int width, int height, byte channels, byte colorSpace, long bytes, long pixels,
+                          long[] ops, boolean complete){
+
+        /**
+         * @param op (QOIStatistics.Op) - Operation
+         * @return (long) - Number of chunks of the operation
+         */
+        public long count(QOIStatistics.Op op){
+            return ops[op.ordinal()];
+        }
+    }
+
+    // ============================================================================================
+    // ================================ DISASSEMBLER API =========================================
+    // ============================================================================================
+
+    /**
+     * Print the chunks of a "Quite Ok Image" file in the Terminal, followed by a summary
+     * @param path (String) - Path of the file
+     * @param summaryOnly (boolean) - true to only print the summary
+     */
+    public static void disassemble(String path, boolean summaryOnly){
+        assert path != null;
+        try (var input = FileChannel.open(Path.of(path), StandardOpenOption.READ)){
+            var output = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.US_ASCII), BUFFER_SIZE);
+            if (!summaryOnly)
+                output.append("==========================================================================================")
+                        .append(System.lineSeparator());
+            var summary = disassemble(input, summaryOnly ? null : output);
+            showSummary(output, summary);
+            output.flush();
+        } catch (IOException e){
+            Helper.fail("An error occurred while trying to disassemble : \"%s\"%n", path);
+        }
+    }
+
+    /**
+     * Disassemble a "Quite Ok Image" file, reading it once from the current position of the channel
+     * @param input (ReadableByteChannel) - File to disassemble, not closed
+     * @param output (Appendable) - Destination of the lines, one per chunk, or null to only compute the summary
+     * @return (Summary) - Summary of the file
+     * @throws AssertionError if the input is null
+     * @throws IOException if the file cannot be read, is not a "Quite Ok Image" file or the lines cannot be written
+     */
+    public static Summary disassemble(ReadableByteChannel input, Appendable output) throws IOException {
+        assert input != null;
+
+        var buffer = ByteBuffer.allocate(BUFFER_SIZE).limit(0);
+        fill(input, buffer, QOISpecification.HEADER_SIZE);
+        if (buffer.remaining() < QOISpecification.HEADER_SIZE)
+            throw new EOFException("Truncated QOI header");
+        byte [] header = new byte[QOISpecification.HEADER_SIZE];
+        buffer.get(header);
+        if (!Arrays.equals(header, 0, 4, QOISpecification.QOI_MAGIC, 0, 4))
+            throw new IOException("Not a QOI file");
+        int width = ByteBuffer.wrap(header, 4, 4).getInt();
+        int height = ByteBuffer.wrap(header, 8, 4).getInt();
+        long expected = Integer.toUnsignedLong(width) * Integer.toUnsignedLong(height);
+
+        var line = (output == null) ? null : new StringBuilder(BUFFER_SIZE + 128);
+        long [] ops = new long[QOIStatistics.Op.values().length];
+        // The chunks are decoded one by one by the decoder itself, a run filling the window
+        var state = new QOIDecoderState();
+        state.uncounted();
+        int [] window = new int[62];
+        long offset = QOISpecification.HEADER_SIZE;
+        long index = 0;
+
+        while (index < expected){
+            fill(input, buffer, 5);
+            if (!buffer.hasRemaining())
+                break;
+            int start = buffer.position();
+            int count = state.decode(buffer.array(), start, start + 1, window, 0, window.length);
+            if (state.next() > buffer.limit())
+                break;
+            buffer.position(state.next());
+            var op = op(buffer.get(start) & 0xFF);
+            ++ops[op.ordinal()];
+
+            if (line != null){
+                appendLine(line, offset, buffer.array(), start, buffer.position(), op, index, count, window[0]);
+                if (line.length() >= BUFFER_SIZE){
+                    output.append(line);
+                    line.setLength(0);
+                }
+            }
+            offset += buffer.position() - start;
+            index += count;
+        }
+        if (line != null)
+            output.append(line);
+
+        fill(input, buffer, QOISpecification.QOI_EOF.length);
+        boolean complete = (index == expected) && (buffer.remaining() >= QOISpecification.QOI_EOF.length)
+                && Arrays.equals(buffer.array(), buffer.position(), buffer.position() + QOISpecification.QOI_EOF.length,
+                QOISpecification.QOI_EOF, 0, QOISpecification.QOI_EOF.length);
+        return new Summary(width, height, header[12], header[13], offset - QOISpecification.HEADER_SIZE, index,
+                ops, complete);
+    }
+
+    // ============================================================================================
+
+    // Hide default constructor
+    private QOIDisassembler(){}
+
+    /**
+     * Make sure the buffer holds at least a given number of bytes (less at the end of the file)
+     */
+    private static void fill(ReadableByteChannel input, ByteBuffer buffer, int needed) throws IOException {
+        if (buffer.remaining() >= needed)
+            return;
+        buffer.compact();
+        while (buffer.position() < needed){
+            if (input.read(buffer) < 0)
+                break;
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Operation of a chunk
+     */
+    private static QOIStatistics.Op op(int chunk){
+        if (chunk == (QOISpecification.QOI_OP_RGB_TAG & 0xFF))
+            return QOIStatistics.Op.RGB;
+        if (chunk == (QOISpecification.QOI_OP_RGBA_TAG & 0xFF))
+            return QOIStatistics.Op.RGBA;
+        return switch (chunk >>> 6){
+            case 0b00 -> QOIStatistics.Op.INDEX;
+            case 0b01 -> QOIStatistics.Op.DIFF;
+            case 0b10 -> QOIStatistics.Op.LUMA;
+            default -> QOIStatistics.Op.RUN;
+        };
+    }
+
+    private static void appendLine(StringBuilder line, long offset, byte[] bytes, int from, int to,
+                                   QOIStatistics.Op op, long index, int count, int pixel){
+        Hexdump.append_bytes(line, offset, bytes, from, to, 5);
+        line.append(" | ").append(NAMES[op.ordinal()]).append(" | ");
+        int mark = line.length();
+        line.append(index);
+        if (op == QOIStatistics.Op.RUN)
+            line.append(" (x").append(count).append(')');
+        pad(line, 13 - (line.length() - mark));
+        line.append("| ");
+        Hexdump.append_hex(line, Integer.toUnsignedLong(pixel), 8);
+        line.append(System.lineSeparator());
+    }
+
+    private static void pad(StringBuilder line, int count){
+        for (int i = 0 ; i < count ; ++i){
+            line.append(' ');
+        }
+    }
+
+    private static void showSummary(Appendable output, Summary summary) throws IOException {
+        var text = new StringBuilder();
+        text.append("==========================================================================================").append(System.lineSeparator());
+        text.append(String.format("== %d x %d, %d channels, color space %d%n",
+                summary.width(), summary.height(), summary.channels(), summary.colorSpace()));
+        text.append(String.format("== %d bytes of chunks for %d pixels (%.3f bytes per pixel)%s%n",
+                summary.bytes(), summary.pixels(), (summary.pixels() == 0) ? 0.0 : (double) summary.bytes() / summary.pixels(),
+                summary.complete() ? "" : ", TRUNCATED OR CORRUPTED"));
+        for (var op : QOIStatistics.Op.values()){
+            text.append(String.format("== %s : %d%n", NAMES[op.ordinal()], summary.count(op)));
+        }
+        text.append("==========================================================================================").append(System.lineSeparator());
+        output.append(text);
+    }
+
+}
@@ -1,6 +1,10 @@
 package cs107;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
 /**
  * "Quite Ok Image" Encoder
@@ -28,16 +32,47 @@ public final class QOIEncoder {
      * @return (byte[]) - Corresponding "Quite Ok Image" Header
      */
     public static byte[] qoiHeader(Helper.Image image){
-        assert (image.color_space() == QOISpecification.ALL) || (image.color_space() == QOISpecification.sRGB);
-        assert ((image.channels() == QOISpecification.RGB) || (image.channels() == QOISpecification.RGBA));
         assert image != null;
 
-        return ArrayUtils.concat(
+        return QOIEncoder.qoiHeader(image.data()[0].length, image.data().length, image.channels(), image.color_space());
+    }
+
+    /**
+     * Generate a "Quite Ok Image" header using the following parameters
+     * @param image (Helper.PixelImage) - Image to use
+     * @throws AssertionError if the colorspace or the number of channels is corrupted or if the image is null.
+     * @return (byte[]) - Corresponding "Quite Ok Image" Header
+     */
+    public static byte[] qoiHeader(Helper.PixelImage image){
+        assert image != null;
+
+        return QOIEncoder.qoiHeader(image.width(), image.height(), image.channels(), image.color_space());
+    }
+
+    /**
+     * Generate a "Quite Ok Image" header using the following parameters
+     * @param width (int) - Width of the image
+     * @param height (int) - Height of the image
+     * @param channels (byte) - Number of channels
+     * @param colorSpace (byte) - Color space
+     * @throws AssertionError if the colorspace, the number of channels or the dimensions are corrupted
+     * @return (byte[]) - Corresponding "Quite Ok Image" Header
+     */
+    public static byte[] qoiHeader(int width, int height, byte channels, byte colorSpace){
+        assert (colorSpace == QOISpecification.ALL) || (colorSpace == QOISpecification.sRGB);
+        assert (channels == QOISpecification.RGB) || (channels == QOISpecification.RGBA);
+        assert (width > 0) && (height > 0);
+
+        long start = QOIStatistics.start();
+        byte [] header = ArrayUtils.concat(
                 QOISpecification.QOI_MAGIC,
-                ArrayUtils.fromInt(image.data()[0].length),
-                ArrayUtils.fromInt(image.data().length),
-                ArrayUtils.wrap(image.channels()),
-                ArrayUtils.wrap(image.color_space()));
+                ArrayUtils.fromInt(width),
+                ArrayUtils.fromInt(height),
+                ArrayUtils.wrap(channels),
+                ArrayUtils.wrap(colorSpace));
+        if (QOIStatistics.ENABLED)
+            QOIStatistics.time(QOIStatistics.Phase.HEADER, start);
+        return header;
     }
 
     // ==================================================================================
@@ -153,6 +188,7 @@ public final class QOIEncoder {
     /**
      * Encode the given image using the "Quite Ok Image" Protocol
      * (See handout for more information about the "Quite Ok Image" protocol)
+     * @apiNote Thin wrapper around QOIEncoder::encodeData(int[], int, int, byte[], int)
      * @param image (byte[][]) - Formatted image to encode
      * @return (byte[]) - "Quite Ok Image" representation of the image
      */
@@ -163,110 +199,85 @@ public final class QOIEncoder {
             assert image[i].length == 4;
         }
 
-        ArrayList<Byte> QoiImage = new ArrayList<>();
+        int [] pixels = new int[image.length];
+        for (int i = 0 ; i < image.length ; ++i){
+            pixels[i] = (image[i][0] & 0xFF) << 24 |
+                    (image[i][1] & 0xFF) << 16 |
+                    (image[i][2] & 0xFF) << 8 |
+                    (image[i][3] & 0xFF);
+        }
 
-        byte [] precedent = new byte[4];
-        ArrayUtils.newPrecedent(precedent,QOISpecification.START_PIXEL);
-        byte [][] hashTable = new byte[64][4];
+        byte [] output = new byte[QOIEncoder.maxDataSize(pixels.length)];
+        int length = QOIEncoder.encodeData(pixels, 0, pixels.length, output, 0);
+        return Arrays.copyOf(output, length);
+    }
 
+    /**
+     * Encode the given packed pixels using the "Quite Ok Image" Protocol.
+     * The pixels are stored as RGBA integers (red in the most significant byte)
+     * and the encoding is written directly in the output array, nothing is allocated per pixel.
+     * @param pixels (int[]) - RGBA packed pixels to encode
+     * @param from (int) - Index of the first pixel to encode (inclusive)
+     * @param to (int) - Index of the last pixel to encode (exclusive)
+     * @param output (byte[]) - Array where to write the encoding
+     * @param position (int) - Index in the output where to start writing
+     * @return (int) - The number of written bytes
+     * @throws AssertionError if one of the arrays is null or the indices are invalid
+     * (the output needs at least QOIEncoder::maxDataSize(to - from) bytes after position)
+     */
+    public static int encodeData(int[] pixels, int from, int to, byte[] output, int position){
+        assert (pixels != null) && (output != null);
+        assert (from >= 0) && (from <= to) && (to <= pixels.length);
 
-        for (int i = 0 ; i < image.length ; ++i){
+        return QOIEncoder.encodeData(pixels, from, to - from, 1, to - from,
+                Helper.PixelFormat.RGBA, output, position);
+    }
 
-            int count = 0;
-            int count2 = 0;
-            if (ArrayUtils.equals(image[i],precedent)){
-                while (ArrayUtils.equals(image[i],precedent)){
-                    ++i;
-                    count +=1;
-                    if (i == image.length){
-                        break;
-                    }
-                }
-                i -=1;
-                ArrayUtils.newPrecedent(precedent,image[i]);
-                if (count > 62){
-                    while (count > 62){
-                        count -= 62;
-                        count2 += 1;
-                    }
-                }
-                if (count2 > 0){
-                    for (int k = 0 ; k < count2 ; ++k){
-                        byte [] run2 = QOIEncoder.qoiOpRun((byte) 62);
-                        ArrayUtils.arrayAdd(run2, QoiImage);
-                    }
-                }
-                byte [] run = QOIEncoder.qoiOpRun((byte) count);
-                ArrayUtils.arrayAdd(run, QoiImage);
-            } else {
-
-                byte hash = QOISpecification.hash(image[i]);
-                if (ArrayUtils.equals(image[i],hashTable[hash])) {
-                    byte[] index = QOIEncoder.qoiOpIndex(hash);
-                    ArrayUtils.arrayAdd(index, QoiImage);
-                    ArrayUtils.newPrecedent(precedent, image[i]);
-                } else {
-
-                    for (int j = 0 ; j < 4 ; ++j){
-                        hashTable[hash][j] = image[i][j];
-                    }
-
-                    if (image[i][3] == precedent[3]){
-                        boolean testDiff = true;
-                        byte [] diff = new byte[3];
-                        for (int j = 0 ; j < 3 ; ++j){
-                            byte diff0 = (byte) (image[i][j]-precedent[j]);
-                            diff [j] = diff0;
-                        }
-                        for (int j = 0 ; j < 3 ; ++j){
-                            if ((diff[j] <= -3)||(diff[j] >= 2)){
-                                testDiff = false;
-                            }
-                        }
-                        if (testDiff){
-                            byte [] qoiDiff = QOIEncoder.qoiOpDiff(diff);
-                            ArrayUtils.arrayAdd(qoiDiff, QoiImage);
-                            ArrayUtils.newPrecedent(precedent,image[i]);
-                        } else {
-
-                            if (image[i][3] == precedent[3]){
-                                boolean testLuma = false;
-                                byte [] luma = new byte[3];
-                                for (int j = 0 ; j < 3 ; ++j){
-                                    byte diff0 = (byte) (image[i][j]-precedent[j]);
-                                    luma [j] = diff0;
-                                }
-                                if ((luma [1] < 32) && (luma [1] > -33)&&
-                                        ((luma[0]-luma[1]) < 8) && ((luma[0]-luma[1]) > -9)&&
-                                        ((luma[2]-luma[1]) < 8) && ((luma[2]-luma[1]) > -9)){
-                                    testLuma = true;
-                                }
-                                if (testLuma){
-                                    byte [] qoiLuma = QOIEncoder.qoiOpLuma(luma);
-                                    ArrayUtils.arrayAdd(qoiLuma, QoiImage);
-                                    ArrayUtils.newPrecedent(precedent,image[i]);
-                                } else {
-
-                                    byte [] rgb = QOIEncoder.qoiOpRGB(image[i]);
-                                    ArrayUtils.arrayAdd(rgb, QoiImage);
-                                    ArrayUtils.newPrecedent(precedent,image[i]);
-                                }
-                            }
-                        }
-                    } else {
-
-                        byte [] rgba = QOIEncoder.qoiOpRGBA(image[i]);
-                        ArrayUtils.arrayAdd(rgba, QoiImage);
-                        ArrayUtils.newPrecedent(precedent,image[i]);
-                    }
-                }
-            }
-        }
-        byte [] qoiImage = new byte[QoiImage.size()];
-        for (int i = 0 ; i < QoiImage.size() ; ++i){
-            qoiImage[i] = QoiImage.get(i);
+    /**
+     * Encode a rectangle of packed pixels using the "Quite Ok Image" Protocol.
+     * The rows are read one after the other, stride pixels apart, and the encoding
+     * is written directly in the output array, nothing is allocated per pixel.
+     * @param pixels (int[]) - Packed pixels to encode
+     * @param offset (int) - Index of the first pixel of the first row
+     * @param width (int) - Number of pixels per row
+     * @param height (int) - Number of rows
+     * @param stride (int) - Distance between the first pixels of two consecutive rows
+     * @param format (Helper.PixelFormat) - Layout of the packed pixels
+     * @param output (byte[]) - Array where to write the encoding
+     * @param position (int) - Index in the output where to start writing
+     * @return (int) - The number of written bytes
+     * @throws AssertionError if one of the arrays is null or the indices are invalid
+     * (the output needs at least QOIEncoder::maxDataSize(width * height) bytes after position)
+     */
+    public static int encodeData(int[] pixels, int offset, int width, int height, int stride,
+                                 Helper.PixelFormat format, byte[] output, int position){
+        assert (pixels != null) && (output != null) && (format != null);
+        assert (offset >= 0) && (width >= 0) && (height >= 0) && (stride >= width);
+        assert (height == 0) || ((long) offset + (long) stride * (height - 1) + width <= pixels.length);
+        assert (position >= 0) && (position <= output.length);
+
+        boolean argb = format == Helper.PixelFormat.ARGB;
+        QOIEncoderState state = new QOIEncoderState();
+        int idx = position;
+        for (int row = 0 ; row < height ; ++row){
+            int start = offset + row * stride;
+            idx = state.encode(pixels, start, start + width, argb, output, idx);
         }
-        return qoiImage;
+        idx = state.finish(output, idx);
+        return idx - position;
+    }
+
+    /**
+     * Compute the worst case size of the encoding of a given number of pixels
+     * (every pixel encoded using the QOI_OP_RGBA schema)
+     * @param pixels (int) - Number of pixels to encode
+     * @return (int) - Maximum number of bytes written by QOIEncoder::encodeData
+     * @throws AssertionError if the number of pixels is negative or the encoding cannot fit in an array
+     */
+    public static int maxDataSize(int pixels){
+        assert (pixels >= 0) && (pixels <= (Integer.MAX_VALUE - QOISpecification.HEADER_SIZE - QOISpecification.QOI_EOF.length) / 5);
+
+        return pixels * 5;
     }
 
     /**
@@ -280,9 +291,183 @@ public final class QOIEncoder {
     public static byte[] qoiFile(Helper.Image image){
         assert image != null;
 
-        return ArrayUtils.concat(QOIEncoder.qoiHeader(image),
-                QOIEncoder.encodeData(ArrayUtils.imageToChannels(image.data())),
-                QOISpecification.QOI_EOF);
+        return QOIEncoder.qoiFile(Helper.PixelImage.fromImage(image));
+    }
+
+    /**
+     * Creates the representation in memory of the "Quite Ok Image" file.
+     * The pixels are read in place, whatever their format and stride.
+     * @apiNote THE FILE IS NOT CREATED YET, THIS IS JUST ITS REPRESENTATION.
+     * TO CREATE THE FILE, YOU'LL NEED TO CALL Helper::write
+     * @param image (Helper.PixelImage) - Image to encode
+     * @return (byte[]) - Binary representation of the "Quite Ok File" of the image
+     * @throws AssertionError if the image is null
+     */
+    public static byte[] qoiFile(Helper.PixelImage image){
+        assert image != null;
+
+        var event = new QOIEvents.Encode();
+        event.begin();
+        byte [] header = QOIEncoder.qoiHeader(image);
+        byte [] file = new byte[header.length + QOIEncoder.maxDataSize(image.width() * image.height())
+                + QOISpecification.QOI_EOF.length];
+        System.arraycopy(header, 0, file, 0, header.length);
+        int length = header.length + QOIEncoder.encodeData(image.data(), 0, image.width(), image.height(),
+                image.stride(), image.format(), file, header.length);
+        System.arraycopy(QOISpecification.QOI_EOF, 0, file, length, QOISpecification.QOI_EOF.length);
+        event.commit(image.width(), image.height(), image.channels(), 4L * image.width() * image.height(),
+                length + QOISpecification.QOI_EOF.length);
+        return Arrays.copyOf(file, length + QOISpecification.QOI_EOF.length);
+    }
+
+    /**
+     * Creates the representation in memory of the "Quite Ok Image" file,
+     * encoding horizontal bands of the image in parallel in the common ForkJoin pool.
+     * The result is a standard "Quite Ok Image" file : each band continues from the last pixel
+     * of the previous band but never refers to a hash table slot it did not write itself
+     * (See QOIEncoderState::resume), which only costs a few bytes per band.
+     * The output is not byte identical to QOIEncoder::qoiFile but decodes to the same image.
+     * @param image (Helper.PixelImage) - Image to encode
+     * @param bandHeight (int) - Number of rows per band
+     * @return (byte[]) - Binary representation of the "Quite Ok File" of the image
+     * @throws AssertionError if the image is null or the band height is not positive
+     */
+    public static byte[] qoiFileParallel(Helper.PixelImage image, int bandHeight){
+        assert image != null;
+        assert bandHeight > 0;
+
+        boolean argb = image.format() == Helper.PixelFormat.ARGB;
+        int bands = (image.height() + bandHeight - 1) / bandHeight;
+        byte [][] encodings = IntStream.range(0, bands).parallel().mapToObj(band -> {
+            int first = band * bandHeight;
+            int rows = Math.min(bandHeight, image.height() - first);
+            QOIEncoderState state = new QOIEncoderState();
+            if (band > 0){
+                int last = image.data()[(first - 1) * image.stride() + image.width() - 1];
+                state.resume(argb ? Integer.rotateLeft(last, 8) : last);
+            }
+            byte [] output = new byte[QOIEncoder.maxDataSize(rows * image.width()) + 1];
+            int idx = 0;
+            for (int row = first ; row < first + rows ; ++row){
+                int start = row * image.stride();
+                idx = state.encode(image.data(), start, start + image.width(), argb, output, idx);
+            }
+            idx = state.finish(output, idx);
+            return Arrays.copyOf(output, idx);
+        }).toArray(byte[][]::new);
+
+        byte [] header = QOIEncoder.qoiHeader(image);
+        var file = ByteBuffer.allocate(header.length + Arrays.stream(encodings).mapToInt(e -> e.length).sum()
+                + QOISpecification.QOI_EOF.length);
+        file.put(header);
+        for (byte [] encoding : encodings){
+            file.put(encoding);
+        }
+        file.put(QOISpecification.QOI_EOF);
+        return file.array();
+    }
+
+    /**
+     * Encode the image as a "Quite Ok Image" file directly in the given buffer,
+     * for instance a memory mapped region of the output file.
+     * A buffer backed by an array with room for the worst case is encoded in place,
+     * the chunks of the other ones (direct or mapped buffers) are put row by row.
+     * @param image (Helper.PixelImage) - Image to encode
+     * @param output (ByteBuffer) - Buffer where to write the file, from its current position.
+     * At most HEADER_SIZE + QOIEncoder::maxDataSize(width * height) + QOI_EOF.length bytes are written
+     * @return (int) - Number of written bytes
+     * @throws AssertionError if the image or the buffer is null
+     * @throws java.nio.BufferOverflowException if the buffer is too small
+     */
+    public static int qoiFile(Helper.PixelImage image, ByteBuffer output){
+        assert (image != null) && (output != null);
+
+        var event = new QOIEvents.Encode();
+        event.begin();
+        int start = output.position();
+        output.put(QOIEncoder.qoiHeader(image));
+        int pixels = image.width() * image.height();
+        if (output.hasArray() && (output.remaining() >= QOIEncoder.maxDataSize(pixels) + QOISpecification.QOI_EOF.length)){
+            int position = output.arrayOffset() + output.position();
+            output.position(output.position() + QOIEncoder.encodeData(image.data(), 0, image.width(), image.height(),
+                    image.stride(), image.format(), output.array(), position));
+        } else {
+            boolean argb = image.format() == Helper.PixelFormat.ARGB;
+            QOIEncoderState state = new QOIEncoderState();
+            byte [] chunks = new byte[QOIEncoder.maxDataSize(image.width()) + 1];
+            for (int row = 0 ; row < image.height() ; ++row){
+                int first = row * image.stride();
+                output.put(chunks, 0, state.encode(image.data(), first, first + image.width(), argb, chunks, 0));
+            }
+            output.put(chunks, 0, state.finish(chunks, 0));
+        }
+        output.put(QOISpecification.QOI_EOF);
+        event.commit(image.width(), image.height(), image.channels(), 4L * pixels, output.position() - start);
+        return output.position() - start;
+    }
+
+    /**
+     * Encode the image as a "Quite Ok Image" file and stream it to the given channel
+     * through a small buffer, the file is never stored entirely in memory.
+     * The channel is not closed.
+     * @param image (Helper.PixelImage) - Image to encode
+     * @param output (WritableByteChannel) - Destination of the file
+     * @throws AssertionError if the image or the channel is null
+     * @throws IOException if the file cannot be written
+     */
+    public static void qoiFile(Helper.PixelImage image, WritableByteChannel output) throws IOException {
+        assert (image != null) && (output != null);
+
+        var encoder = new QOIStreamEncoder(output, image.width(), image.height(), image.channels(),
+                image.color_space(), QOIStreamEncoder.DEFAULT_BUFFER_SIZE);
+        for (int row = 0 ; row < image.height() ; ++row){
+            encoder.writeRow(image.data(), row * image.stride(), image.format());
+        }
+        encoder.finish();
+    }
+
+    /**
+     * Creates the representation in memory of a banded "Quite Ok Image" file
+     * (See QOISpecification for the layout of the file).
+     * The bands are encoded in parallel in the common ForkJoin pool.
+     * @param image (Helper.PixelImage) - Image to encode
+     * @param bandHeight (int) - Number of rows per band
+     * @return (byte[]) - Binary representation of the banded "Quite Ok File" of the image
+     * @throws AssertionError if the image is null or the band height is not positive
+     */
+    public static byte[] qoiBandedFile(Helper.PixelImage image, int bandHeight){
+        assert image != null;
+        assert bandHeight > 0;
+
+        int bands = (image.height() + bandHeight - 1) / bandHeight;
+        byte [][] encodings = IntStream.range(0, bands).parallel().mapToObj(band -> {
+            int first = band * bandHeight;
+            int rows = Math.min(bandHeight, image.height() - first);
+            byte [] output = new byte[QOIEncoder.maxDataSize(rows * image.width())];
+            int length = QOIEncoder.encodeData(image.data(), first * image.stride(), image.width(), rows,
+                    image.stride(), image.format(), output, 0);
+            return Arrays.copyOf(output, length);
+        }).toArray(byte[][]::new);
+
+        byte [] header = QOIEncoder.qoiHeader(image);
+        System.arraycopy(QOISpecification.QOI_BANDED_MAGIC, 0, header, 0, QOISpecification.QOI_BANDED_MAGIC.length);
+        byte [][] sizes = new byte[bands + 1][];
+        sizes[0] = ArrayUtils.fromInt(bandHeight);
+        for (int band = 0 ; band < bands ; ++band){
+            sizes[band + 1] = ArrayUtils.fromInt(encodings[band].length);
+        }
+
+        var file = ByteBuffer.allocate(header.length + 4 * sizes.length
+                + Arrays.stream(encodings).mapToInt(e -> e.length).sum() + QOISpecification.QOI_EOF.length);
+        file.put(header);
+        for (byte [] size : sizes){
+            file.put(size);
+        }
+        for (byte [] encoding : encodings){
+            file.put(encoding);
+        }
+        file.put(QOISpecification.QOI_EOF);
+        return file.array();
     }
 
 }
\ No newline at end of file
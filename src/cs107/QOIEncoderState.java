@@ -0,0 +1,156 @@
+package cs107;
+
+import java.util.Arrays;
+
+/**
+ * State of the "Quite Ok Image" encoding algorithm (previous pixel, pending run
+ * and hash table), kept between calls so that an image can be encoded in several spans.
+ * @apiNote Used by QOIEncoder and the streaming encoders, not thread safe
+ */
+final class QOIEncoderState {
+
+    /**
+     * Number of pixels hashed at once when the hashes are computed span by span (See PixelKernels.SPAN_HASH)
+     */
+    private static final int BLOCK = 1 << 10;
+
+    private final int[] hashTable = new int[64];
+    private int precedent = QOISpecification.START_PIXEL_RGBA;
+    private int count = 0;
+    private final QOIStatistics.Tally tally = QOIStatistics.ENABLED ? new QOIStatistics.Tally() : null;
+    private final int[] hashes = PixelKernels.SPAN_HASH ? new int[BLOCK] : null;
+
+    QOIEncoderState(){
+        if (QOIStatistics.ENABLED)
+            tally.begin();
+    }
+
+    /**
+     * Go back to the state of the beginning of an image
+     */
+    void reset(){
+        Arrays.fill(hashTable, 0);
+        precedent = QOISpecification.START_PIXEL_RGBA;
+        count = 0;
+        if (QOIStatistics.ENABLED)
+            tally.begin();
+    }
+
+    /**
+     * Go to a state from which the encoding can continue an image whose previous
+     * pixels are encoded elsewhere (for instance by another thread) :
+     * the previous pixel is known but the content of the hash table is not.
+     * Every slot of the hash table is filled with a pixel that does not hash to this slot,
+     * so that no QOI_OP_INDEX chunk refers to a slot before this state writes it.
+     * @param precedent (int) - RGBA packed pixel preceding the next pixel to encode
+     */
+    void resume(int precedent){
+        for (int slot = 0 ; slot < 64 ; ++slot){
+            // Only alpha set : hash = alpha * 11 % 64, and 35 * 11 = 1 (mod 64)
+            hashTable[slot] = (35 * (slot + 1)) & 0x3F;
+        }
+        this.precedent = precedent;
+        count = 0;
+        if (QOIStatistics.ENABLED)
+            tally.follow();
+    }
+
+    /**
+     * Encode a span of packed pixels, following the pixels already encoded with this state.
+     * A pending run is not written until a different pixel comes or QOIEncoderState::finish is called.
+     * @param pixels (int[]) - Packed pixels to encode
+     * @param from (int) - Index of the first pixel to encode (inclusive)
+     * @param to (int) - Index of the last pixel to encode (exclusive)
+     * @param argb (boolean) - true if the pixels are ARGB packed, false if they are RGBA packed
+     * @param output (byte[]) - Array where to write the encoding
+     * @param position (int) - Index in the output where to start writing
+     * @return (int) - Index in the output after the last written byte
+     * (at most 5 * (to - from) + 1 bytes are written)
+     */
+    int encode(int[] pixels, int from, int to, boolean argb, byte[] output, int position){
+        long start = QOIStatistics.start();
+        int [] hashTable = this.hashTable;
+        int [] hashes = this.hashes;
+        int precedent = this.precedent;
+        int count = this.count;
+        int idx = position;
+        // hashes[k] is the hash of the pixel at base + k, for the pixels before hashed
+        int base = from;
+        int hashed = from;
+
+        for (int i = from ; i < to ; ++i){
+            if (PixelKernels.SPAN_HASH && (i >= hashed)){
+                base = i;
+                hashed = Math.min(to, i + BLOCK);
+                PixelKernels.hash(pixels, base, hashed, argb, hashes, 0);
+            }
+            int pixel = argb ? Integer.rotateLeft(pixels[i], 8) : pixels[i];
+
+            if (pixel == precedent){
+                // The pixels equal to this one follow it, whatever their layout
+                int length = 1 + ((i + 1 < to) ? PixelKernels.run(pixels, i + 1, to) : 0);
+                count += length;
+                while (count >= 62){
+                    idx = QOISpecification.writeRun(output, idx, 62);
+                    count -= 62;
+                }
+                i += length - 1;
+                continue;
+            }
+            if (count > 0){
+                idx = QOISpecification.writeRun(output, idx, count);
+                count = 0;
+            }
+
+            int hash = PixelKernels.SPAN_HASH ? hashes[i - base] : QOISpecification.hash(pixel);
+            if (hashTable[hash] == pixel){
+                idx = QOISpecification.writeIndex(output, idx, hash);
+            } else {
+                hashTable[hash] = pixel;
+
+                if (QOISpecification.alpha(pixel) == QOISpecification.alpha(precedent)){
+                    int dr = QOISpecification.deltaRed(pixel, precedent);
+                    int dg = QOISpecification.deltaGreen(pixel, precedent);
+                    int db = QOISpecification.deltaBlue(pixel, precedent);
+
+                    if (QOISpecification.isDiff(dr, dg, db)){
+                        idx = QOISpecification.writeDiff(output, idx, dr, dg, db);
+                    } else if (QOISpecification.isLuma(dr, dg, db)){
+                        idx = QOISpecification.writeLuma(output, idx, dr, dg, db);
+                    } else {
+                        idx = QOISpecification.writeRgb(output, idx, pixel);
+                    }
+                } else {
+                    idx = QOISpecification.writeRgba(output, idx, pixel);
+                }
+            }
+            precedent = pixel;
+        }
+
+        this.precedent = precedent;
+        this.count = count;
+        if (QOIStatistics.ENABLED)
+            tally.add(output, position, idx, to - from, start);
+        return idx;
+    }
+
+    /**
+     * Write the pending run, if any, and end the image (or the band) encoded with this state
+     * @param output (byte[]) - Array where to write the encoding
+     * @param position (int) - Index in the output where to start writing
+     * @return (int) - Index in the output after the last written byte (at most 1 byte is written)
+     */
+    int finish(byte[] output, int position){
+        int idx = position;
+        if (count > 0){
+            idx = QOISpecification.writeRun(output, idx, count);
+            count = 0;
+        }
+        if (QOIStatistics.ENABLED){
+            tally.add(output, position, idx, 0, System.nanoTime());
+            QOIStatistics.encoded(tally);
+        }
+        return idx;
+    }
+
+}
@@ -0,0 +1,134 @@
+package cs107;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events emitted around the stages of the conversions between "PNG" and "QOI"
+ * (See Main::pngToQoi and Main::qoiToPng), so that a recording shows where the time of each conversion goes,
+ * next to the garbage collections and the allocations of the same thread.
+ * <ul>
+ *     <li>cs107.Read : reading an image from the disk</li>
+ *     <li>cs107.Encode : encoding pixels to "Quite Ok Image"</li>
+ *     <li>cs107.Decode : decoding a "Quite Ok Image" file</li>
+ *     <li>cs107.Write : writing an image to the disk</li>
+ *     <li>cs107.Transcode : a whole conversion, containing the events of its stages</li>
+ *     <li>cs107.FileRead and cs107.FileWrite : reading or writing raw bytes (Helper::read, Helper::write
+ *     and the buffer of QOIStreamEncoder), which have no image dimensions</li>
+ * </ul>
+ * The events are only recorded when a recording is running (for instance with -XX:StartFlightRecording),
+ * otherwise they cost close to nothing. QOIStreamEncoder, called for every row or strip,
+ * only allocates and times its events when they are enabled.
+ */
+public final class QOIEvents {
+
+    // Hide default constructor
+    private QOIEvents(){}
+
+    /**
+     * Fields common to all the stages
+     */
+    @Category("Quite Ok Image")
+    abstract static class Stage extends Event {
+
+        @Label("Width")
+        int width;
+
+        @Label("Height")
+        int height;
+
+        @Label("Channels")
+        int channels;
+
+        @Label("Input Size")
+        @DataAmount
+        long inputBytes;
+
+        @Label("Output Size")
+        @DataAmount
+        long outputBytes;
+
+        /**
+         * End the stage and record it if it passes the settings of the recording
+         * @param width (int) - Width of the image (or strip) processed
+         * @param height (int) - Height of the image (or strip) processed
+         * @param channels (int) - Number of channels of the image
+         * @param inputBytes (long) - Number of bytes consumed
+         * @param outputBytes (long) - Number of bytes produced
+         */
+        final void commit(int width, int height, int channels, long inputBytes, long outputBytes){
+            end();
+            if (shouldCommit()){
+                this.width = width;
+                this.height = height;
+                this.channels = channels;
+                this.inputBytes = inputBytes;
+                this.outputBytes = outputBytes;
+                commit();
+            }
+        }
+    }
+
+    @Name("cs107.Read")
+    @Label("Read")
+    @Description("Image read from the disk, the output size is the size in memory")
+    static final class Read extends Stage {}
+
+    @Name("cs107.Encode")
+    @Label("Encode")
+    @Description("Pixels encoded to \"Quite Ok Image\", the input size is 4 bytes per pixel")
+    static final class Encode extends Stage {}
+
+    @Name("cs107.Decode")
+    @Label("Decode")
+    @Description("\"Quite Ok Image\" file decoded, the output size is 4 bytes per pixel")
+    static final class Decode extends Stage {}
+
+    @Name("cs107.Write")
+    @Label("Write")
+    @Description("Image written to the disk, the output size is the size on the disk")
+    static final class Write extends Stage {}
+
+    /**
+     * Fields common to the transfers of raw bytes
+     */
+    @Category("Quite Ok Image")
+    abstract static class Transfer extends Event {
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+
+        /**
+         * End the transfer and record it if it passes the settings of the recording
+         * @param bytes (long) - Number of bytes read or written
+         */
+        final void commit(long bytes){
+            end();
+            if (shouldCommit()){
+                this.bytes = bytes;
+                commit();
+            }
+        }
+    }
+
+    @Name("cs107.FileRead")
+    @Label("File Read")
+    @Description("Raw bytes read from the disk")
+    static final class FileRead extends Transfer {}
+
+    @Name("cs107.FileWrite")
+    @Label("File Write")
+    @Description("Raw bytes written to the disk or to a channel")
+    static final class FileWrite extends Transfer {}
+
+    @Name("cs107.Transcode")
+    @Label("Transcode")
+    @Description("Whole conversion of a file, from the first read to the last write")
+    static final class Transcode extends Stage {}
+
+}
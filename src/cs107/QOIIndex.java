@@ -0,0 +1,288 @@
+package cs107;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Checkpoint index of a standard "Quite Ok Image" file.
+ * The decoding state is recorded every few rows, so that a range of rows or a region
+ * of the image is decoded from the closest checkpoint instead of from the first pixel.
+ * The index is built once and stored next to the file (see QOISpecification::QOI_INDEX_MAGIC),
+ * the file itself is left untouched and stays readable by any decoder.
+ * The file is read through a FileChannel with positional reads, a block at a time from the closest checkpoint :
+ * it is never loaded whole in memory and can be larger than an array.
+ * @apiNote Immutable, the decoding methods can be called from several threads, even on the same channel
+ */
+public final class QOIIndex {
+
+    private static final int CHECKPOINT_SIZE = 8 + 4 + 4 + 64 * 4;
+
+    /**
+     * Number of bytes of the file read at once
+     */
+    private static final int BLOCK = 1 << 16;
+
+    private final int width;
+    private final int height;
+    private final long size;
+    private final int interval;
+    private final QOIDecoderState.Checkpoint[] checkpoints;
+
+    private QOIIndex(int width, int height, long size, int interval, QOIDecoderState.Checkpoint[] checkpoints){
+        this.width = width;
+        this.height = height;
+        this.size = size;
+        this.interval = interval;
+        this.checkpoints = checkpoints;
+    }
+
+    /**
+     * Index a standard "Quite Ok Image" file. Only the decoding state is computed, no pixel is stored
+     * @param channel (FileChannel) - File to index, its position is not used nor changed
+     * @param interval (int) - Number of rows between two checkpoints
+     * @return (QOIIndex) - Index of the file
+     * @throws AssertionError if channel is null, is not a valid "Quite Ok Image" file or interval is not positive
+     * @throws IOException if the file cannot be read or is truncated
+     */
+    public static QOIIndex build(FileChannel channel, int interval) throws IOException {
+        assert channel != null;
+        assert interval > 0;
+        long size = channel.size();
+        assert size >= QOISpecification.HEADER_SIZE + QOISpecification.QOI_EOF.length;
+        int [] header = header(channel);
+        int width = header[0];
+        int height = header[1];
+
+        var checkpoints = new QOIDecoderState.Checkpoint[(height + interval - 1) / interval];
+        var state = new QOIDecoderState();
+        var chunks = new Chunks(channel, size - QOISpecification.QOI_EOF.length, state, QOISpecification.HEADER_SIZE);
+        long rows = (long) interval * width;
+        for (int i = 0 ; i < checkpoints.length ; ++i){
+            if (i > 0)
+                chunks.skip(rows);
+            checkpoints[i] = state.checkpoint(chunks.offset(), i * rows);
+        }
+        return new QOIIndex(width, height, size, interval, checkpoints);
+    }
+
+    /**
+     * Index a standard "Quite Ok Image" file with QOISpecification::INDEX_INTERVAL rows between two checkpoints
+     * @param channel (FileChannel) - File to index
+     * @return (QOIIndex) - Index of the file
+     * @throws IOException if the file cannot be read or is truncated
+     */
+    public static QOIIndex build(FileChannel channel) throws IOException {
+        return build(channel, QOISpecification.INDEX_INTERVAL);
+    }
+
+    /**
+     * Number of rows between two checkpoints
+     * @return (int) - interval of the index
+     */
+    public int interval(){
+        return interval;
+    }
+
+    /**
+     * Decode a range of rows of the indexed file
+     * @param channel (FileChannel) - Indexed file
+     * @param from (int) - Index of the first row to decode
+     * @param to (int) - Index of the row after the last row to decode
+     * @return (Helper.PixelImage) - Decoded rows, stored as RGBA packed pixels without padding
+     * @throws AssertionError if channel is not the indexed file or the range is empty, out of the image
+     * or has more pixels than an array can hold
+     * @throws IOException if the file cannot be read or is truncated
+     */
+    public Helper.PixelImage decodeRows(FileChannel channel, int from, int to) throws IOException {
+        return decodeRegion(channel, 0, from, width, to - from);
+    }
+
+    /**
+     * Decode a rectangular region of the indexed file.
+     * Only the chunks between the closest checkpoint and the bottom right pixel of the region are read and decoded
+     * @param channel (FileChannel) - Indexed file, its position is not used nor changed
+     * @param x (int) - Column of the top left pixel of the region
+     * @param y (int) - Row of the top left pixel of the region
+     * @param width (int) - Width of the region
+     * @param height (int) - Height of the region
+     * @return (Helper.PixelImage) - Decoded region, stored as RGBA packed pixels without padding
+     * @throws AssertionError if channel is not the indexed file or the region is empty, out of the image
+     * or has more pixels than an array can hold
+     * @throws IOException if the file cannot be read or is truncated
+     */
+    public Helper.PixelImage decodeRegion(FileChannel channel, int x, int y, int width, int height) throws IOException {
+        assert channel != null;
+        assert channel.size() == size;
+        assert (x >= 0) && (y >= 0) && (width > 0) && (height > 0);
+        assert (x + width <= this.width) && (y + height <= this.height);
+        assert (long) width * height <= Integer.MAX_VALUE;
+
+        var checkpoint = checkpoints[y / interval];
+        var state = new QOIDecoderState();
+        state.restore(checkpoint);
+        var chunks = new Chunks(channel, size - QOISpecification.QOI_EOF.length, state, checkpoint.offset());
+        chunks.skip((long) y * this.width + x - checkpoint.pixel());
+
+        int [] pixels = new int[width * height];
+        for (int line = 0 ; line < height ; ++line){
+            if (line > 0)
+                chunks.skip(this.width - width);
+            chunks.decode(pixels, line * width, (line + 1) * width);
+        }
+        int [] header = header(channel);
+        return new Helper.PixelImage(pixels, width, height, Helper.PixelFormat.RGBA, (byte) header[2], (byte) header[3]);
+    }
+
+    /**
+     * Serialize the index to store it next to the indexed file
+     * @return (byte[]) - Content of the index file
+     */
+    public byte[] toBytes(){
+        var buffer = ByteBuffer.allocate(QOISpecification.QOI_INDEX_MAGIC.length + 4 * 4 + 8 + checkpoints.length * CHECKPOINT_SIZE);
+        buffer.put(QOISpecification.QOI_INDEX_MAGIC);
+        buffer.putInt(width).putInt(height).putLong(size).putInt(interval).putInt(checkpoints.length);
+        for (var checkpoint : checkpoints){
+            buffer.putLong(checkpoint.offset()).putInt(checkpoint.run()).putInt(checkpoint.precedent());
+            for (var pixel : checkpoint.hashTable()){
+                buffer.putInt(pixel);
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Read an index serialized with QOIIndex::toBytes
+     * @param content (byte[]) - Content of the index file
+     * @return (QOIIndex) - The index
+     * @throws AssertionError if content is null or is not a valid index
+     */
+    public static QOIIndex fromBytes(byte[] content){
+        assert content != null;
+        int magic = QOISpecification.QOI_INDEX_MAGIC.length;
+        assert content.length >= magic + 4 * 4 + 8;
+        assert Arrays.equals(content, 0, magic, QOISpecification.QOI_INDEX_MAGIC, 0, magic);
+        var buffer = ByteBuffer.wrap(content, magic, content.length - magic);
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        long size = buffer.getLong();
+        int interval = buffer.getInt();
+        int count = buffer.getInt();
+        assert (width > 0) && (height > 0) && (interval > 0);
+        assert count == (height + interval - 1) / interval;
+        assert buffer.remaining() == (long) count * CHECKPOINT_SIZE;
+
+        var checkpoints = new QOIDecoderState.Checkpoint[count];
+        for (int i = 0 ; i < count ; ++i){
+            long offset = buffer.getLong();
+            int run = buffer.getInt();
+            int precedent = buffer.getInt();
+            int [] hashTable = new int[64];
+            buffer.asIntBuffer().get(hashTable);
+            buffer.position(buffer.position() + 64 * 4);
+            checkpoints[i] = new QOIDecoderState.Checkpoint(offset, (long) i * interval * width, precedent, run, hashTable);
+        }
+        return new QOIIndex(width, height, size, interval, checkpoints);
+    }
+
+    // ============================================================================================
+
+    private static int[] header(FileChannel channel) throws IOException {
+        var header = ByteBuffer.allocate(QOISpecification.HEADER_SIZE);
+        while (header.hasRemaining()){
+            if (channel.read(header, header.position()) < 0)
+                throw new EOFException("Truncated \"Quite Ok Image\" header");
+        }
+        return QOIDecoder.decodeHeader(header.array());
+    }
+
+    /**
+     * Chunks of a file decoded with a QOIDecoderState, read QOIIndex::BLOCK bytes at a time with positional reads
+     */
+    private static final class Chunks {
+
+        private final FileChannel channel;
+        private final long end;
+        private final QOIDecoderState state;
+        // 4 spare bytes, so that a chunk truncated at the end of the data is detected instead of read out of the block
+        private final byte[] block = new byte[BLOCK + 4];
+        private final ByteBuffer buffer = ByteBuffer.wrap(block);
+        // Offset in the file of block[0], number of bytes read in block, index in block of the next chunk
+        private long offset;
+        private int length = 0;
+        private int position = 0;
+
+        /**
+         * @param channel (FileChannel) - File to read
+         * @param end (long) - Offset in the file of the end of the chunks
+         * @param state (QOIDecoderState) - State of the decoding at the chunk of the given offset
+         * @param offset (long) - Offset in the file of the next chunk
+         */
+        Chunks(FileChannel channel, long end, QOIDecoderState state, long offset){
+            this.channel = channel;
+            this.end = end;
+            this.state = state;
+            this.offset = offset;
+        }
+
+        /**
+         * Offset in the file of the next chunk
+         * @return (long) - Offset of the first chunk not decoded yet
+         */
+        long offset(){
+            return offset + position;
+        }
+
+        /**
+         * Decode the next pixels (See QOIDecoderState::decode)
+         * @param pixels (int[]) - Array where to store the RGBA packed pixels, or null to skip them
+         * @param from (int) - Index in pixels of the first pixel to decode
+         * @param to (int) - Index in pixels after the last pixel to decode
+         * @throws IOException if the file cannot be read or ends before the last pixel
+         */
+        void decode(int[] pixels, int from, int to) throws IOException {
+            int p = from;
+            while (true){
+                boolean last = offset + length == end;
+                // A chunk is at most 5 bytes long : the chunks starting 4 bytes before the end of the block are complete
+                p = state.decode(block, position, last ? length : Math.max(position, length - 4), pixels, p, to);
+                position = state.next();
+                if (position > length)
+                    throw new EOFException("Truncated \"Quite Ok Image\" data");
+                if (p == to)
+                    return;
+                if (last)
+                    throw new EOFException("Truncated \"Quite Ok Image\" data");
+                fill();
+            }
+        }
+
+        /**
+         * Skip the next pixels
+         * @param count (long) - Number of pixels to skip
+         * @throws IOException if the file cannot be read or ends before the last pixel
+         */
+        void skip(long count) throws IOException {
+            while (count > 0){
+                int step = (int) Math.min(count, Integer.MAX_VALUE);
+                decode(null, 0, step);
+                count -= step;
+            }
+        }
+
+        private void fill() throws IOException {
+            offset += position;
+            position = 0;
+            int count = (int) Math.min(BLOCK, end - offset);
+            buffer.clear().limit(count);
+            while (buffer.hasRemaining()){
+                if (channel.read(buffer, offset + buffer.position()) < 0)
+                    throw new EOFException("Truncated \"Quite Ok Image\" data");
+            }
+            length = count;
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package cs107;
+
+/**
+ * "Quite Ok Image" Decoder reusing its buffers from one image to the next.
+ * The hash table and the pixel buffer are kept and only grow, so once the buffer
+ * fits the largest image, decoding an image only allocates the small header and image records.
+ * @apiNote Not thread safe : use one instance per thread, for instance through QOICodecPool
+ */
+public final class QOIReusableDecoder {
+
+    private final QOIDecoderState state = new QOIDecoderState();
+    private final byte[] header = new byte[QOISpecification.HEADER_SIZE];
+    private int[] pixels = new int[0];
+
+    /**
+     * Decode a "Quite Ok Image" file into the pixel buffer of this decoder
+     * @apiNote The pixels of the returned image are overwritten (or replaced) by the next call
+     * to QOIReusableDecoder::decode, copy them to keep them
+     * @param content (byte[]) - Array holding the file
+     * @param offset (int) - Index of the first byte of the file
+     * @param length (int) - Size of the file
+     * @return (Helper.PixelImage) - Decoded image, stored as RGBA packed pixels in the buffer of this decoder
+     * @throws AssertionError if content is null or does not hold a valid "Quite Ok Image" file
+     */
+    public Helper.PixelImage decode(byte[] content, int offset, int length){
+        assert content != null;
+        assert (offset >= 0) && (length >= QOISpecification.HEADER_SIZE + QOISpecification.QOI_EOF.length);
+        assert offset + length <= content.length;
+
+        System.arraycopy(content, offset, header, 0, header.length);
+        int [] decoded = QOIDecoder.decodeHeader(header);
+        int count = decoded[0] * decoded[1];
+        if (pixels.length < count)
+            pixels = new int[count];
+
+        state.reset();
+        int end = offset + length - QOISpecification.QOI_EOF.length;
+        int position = state.decode(content, offset + QOISpecification.HEADER_SIZE, end, pixels, 0, count);
+        assert position == count;
+        return new Helper.PixelImage(pixels, decoded[0], decoded[1], Helper.PixelFormat.RGBA,
+                (byte) decoded[2], (byte) decoded[3]);
+    }
+
+    /**
+     * Decode a "Quite Ok Image" file into the pixel buffer of this decoder
+     * @param content (byte[]) - Content of the file
+     * @return (Helper.PixelImage) - Decoded image, stored as RGBA packed pixels in the buffer of this decoder
+     * @throws AssertionError if content is null or is not a valid "Quite Ok Image" file
+     */
+    public Helper.PixelImage decode(byte[] content){
+        assert content != null;
+        return decode(content, 0, content.length);
+    }
+
+    /**
+     * Release the pixel buffer if it is larger than a given capacity, for instance after an unusually large image
+     * @param capacity (int) - Largest number of pixels kept
+     */
+    public void trim(int capacity){
+        if (pixels.length > capacity)
+            pixels = new int[0];
+    }
+
+}
@@ -0,0 +1,108 @@
+package cs107;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * "Quite Ok Image" Encoder reusing its buffers from one image to the next.
+ * The hash table and the output buffer are kept and only grow, so once the buffer
+ * fits the largest image, encoding an image does not allocate anything.
+ * The encoding of the last image stays in the buffer until the next call to QOIReusableEncoder::encode.
+ * @apiNote Not thread safe : use one instance per thread, for instance through QOICodecPool
+ */
+public final class QOIReusableEncoder {
+
+    private final QOIEncoderState state = new QOIEncoderState();
+    private byte[] buffer = new byte[0];
+    private int size = 0;
+
+    /**
+     * Encode an image to the "Quite Ok Image" format in the buffer of this encoder
+     * @param image (Helper.PixelImage) - Image to encode
+     * @return (int) - Size of the file, stored at the beginning of QOIReusableEncoder::buffer
+     * @throws AssertionError if the image is null
+     */
+    public int encode(Helper.PixelImage image){
+        assert image != null;
+
+        int width = image.width();
+        int height = image.height();
+        int capacity = QOISpecification.HEADER_SIZE + QOIEncoder.maxDataSize(width * height)
+                + QOISpecification.QOI_EOF.length;
+        if (buffer.length < capacity)
+            buffer = new byte[capacity];
+
+        byte [] output = buffer;
+        System.arraycopy(QOISpecification.QOI_MAGIC, 0, output, 0, QOISpecification.QOI_MAGIC.length);
+        int idx = QOISpecification.QOI_MAGIC.length;
+        idx = writeInt(output, idx, width);
+        idx = writeInt(output, idx, height);
+        output[idx++] = image.channels();
+        output[idx++] = image.color_space();
+
+        state.reset();
+        boolean argb = image.format() == Helper.PixelFormat.ARGB;
+        for (int row = 0 ; row < height ; ++row){
+            int start = row * image.stride();
+            idx = state.encode(image.data(), start, start + width, argb, output, idx);
+        }
+        idx = state.finish(output, idx);
+        System.arraycopy(QOISpecification.QOI_EOF, 0, output, idx, QOISpecification.QOI_EOF.length);
+        size = idx + QOISpecification.QOI_EOF.length;
+        return size;
+    }
+
+    /**
+     * Buffer holding the last encoded file in its first QOIReusableEncoder::size bytes
+     * @apiNote The buffer is overwritten (or replaced) by the next call to QOIReusableEncoder::encode
+     * @return (byte[]) - Buffer of this encoder
+     */
+    public byte[] buffer(){
+        return buffer;
+    }
+
+    /**
+     * @return (int) - Size of the last encoded file
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Copy the last encoded file
+     * @return (byte[]) - Content of the file
+     */
+    public byte[] toByteArray(){
+        return Arrays.copyOf(buffer, size);
+    }
+
+    /**
+     * Write the last encoded file to a stream
+     * @param output (OutputStream) - Destination of the file
+     * @throws IOException if the file cannot be written
+     */
+    public void writeTo(OutputStream output) throws IOException {
+        output.write(buffer, 0, size);
+    }
+
+    /**
+     * Release the buffer if it is larger than a given capacity, for instance after an unusually large image
+     * @param capacity (int) - Largest buffer kept
+     */
+    public void trim(int capacity){
+        if (buffer.length > capacity){
+            buffer = new byte[0];
+            size = 0;
+        }
+    }
+
+    private static int writeInt(byte[] output, int idx, int value){
+        output[idx]     = (byte) (value >>> 24);
+        output[idx + 1] = (byte) (value >>> 16);
+        output[idx + 2] = (byte) (value >>> 8);
+        output[idx + 3] = (byte) value;
+        return idx + 4;
+    }
+
+}
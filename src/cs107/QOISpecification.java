@@ -77,6 +77,11 @@ public final class QOISpecification {
      */
     public static final byte[] START_PIXEL = new byte[]{0, 0, 0, (byte) 255};
 
+    /**
+     * START_PIXEL packed as an RGBA integer
+     */
+    public static final int START_PIXEL_RGBA = 0x00_00_00_FF;
+
     // ==================================================================================
     // ============================ "Quite Ok Image" EOF ================================
     // ==================================================================================
@@ -86,6 +91,74 @@ public final class QOISpecification {
      */
     public static final byte[] QOI_EOF = new byte[]{0, 0, 0, 0, 0, 0, 0, 1};
 
+    // ==================================================================================
+    // ======================= "Quite Ok Image" Banded Container ========================
+    // ==================================================================================
+
+    /*
+     * A banded file splits the image in horizontal bands of BAND_HEIGHT rows (the last one can be smaller).
+     * Each band is encoded independently, starting from START_PIXEL and an empty hash table,
+     * so that the bands can be encoded and decoded in parallel. Layout of the file :
+     *   header (HEADER_SIZE bytes, the magic number being QOI_BANDED_MAGIC)
+     *   band height (4 bytes, Big Endian)
+     *   size of each band in bytes (4 bytes each, Big Endian)
+     *   encoding of each band
+     *   QOI_EOF
+     */
+
+    /**
+     * Magic Number of a banded "Quite Ok Image" file
+     */
+    public static final byte[] QOI_BANDED_MAGIC = new byte[]{'q', 'o', 'i', 'b'};
+
+    /**
+     * Default number of rows of a band in a banded "Quite Ok Image" file
+     */
+    public static final int BAND_HEIGHT = 256;
+
+    // ==================================================================================
+    // ======================== "Quite Ok Image" Checkpoint Index =======================
+    // ==================================================================================
+
+    /*
+     * A checkpoint index is a sidecar file storing the decoding state of a standard file
+     * every "interval" rows, so that any range of rows can be decoded without decoding the rows before it.
+     * Layout of the file (all the integers are Big Endian, the sizes and offsets 8 bytes, the others 4 bytes) :
+     *   QOI_INDEX_MAGIC
+     *   width, height, size of the indexed file, interval, number of checkpoints
+     *   for each checkpoint : offset of the next chunk, pixels of a run left to decode,
+     *                         previous pixel (RGBA), hash table (64 RGBA pixels)
+     */
+
+    /**
+     * Magic Number of a "Quite Ok Image" checkpoint index
+     */
+    public static final byte[] QOI_INDEX_MAGIC = new byte[]{'q', 'o', 'i', 'x'};
+
+    /**
+     * Default number of rows between two checkpoints of a "Quite Ok Image" checkpoint index
+     */
+    public static final int INDEX_INTERVAL = 64;
+
+    // ==================================================================================
+    // ========================== "Quite Ok Image" Catalogue ============================
+    // ==================================================================================
+
+    /*
+     * A catalogue lists the headers of the "Quite Ok Image" files of a directory tree (See QOICatalogue).
+     * Layout of the file (all the integers are Big Endian) :
+     *   QOI_CATALOGUE_MAGIC
+     *   for each file : length of the path (2 bytes), path relative to the scanned directory (UTF-8),
+     *                   size of the file (8 bytes), width (4 bytes), height (4 bytes),
+     *                   channels (1 byte), color space (1 byte)
+     *   until the end of the file
+     */
+
+    /**
+     * Magic Number of a "Quite Ok Image" catalogue
+     */
+    public static final byte[] QOI_CATALOGUE_MAGIC = new byte[]{'q', 'o', 'i', 'c'};
+
     // ==================================================================================
     // ============================ "Quite Ok Image" Tags ===============================
     // ==================================================================================
@@ -136,4 +209,227 @@ public final class QOISpecification {
         return (byte) (tmp < 0 ? tmp + 64 : tmp);
     }
 
+    // ==================================================================================
+    // ========================== "Quite Ok Image" Packed Pixels =========================
+    // ==================================================================================
+
+    /*
+     * Primitives on pixels packed in an integer, red in the most significant byte and alpha
+     * in the least significant byte (see Helper.PixelFormat::RGBA). The codec engines keep
+     * the previous pixel and the hash table (int[64]) of packed pixels, nothing is allocated per pixel.
+     * The op writers store a chunk in a byte array and return the index after the chunk.
+     */
+
+    /**
+     * Pack a pixel in an RGBA integer
+     * @param pixel (byte[]) - Pixel to pack
+     * @return (int) - RGBA packed pixel
+     */
+    public static int pack(byte[] pixel){
+        assert pixel.length == 4;
+        return (pixel[r] & 0xFF) << 24 | (pixel[g] & 0xFF) << 16 | (pixel[b] & 0xFF) << 8 | (pixel[a] & 0xFF);
+    }
+
+    /**
+     * Unpack an RGBA packed pixel
+     * @param pixel (int) - RGBA packed pixel
+     * @return (byte[]) - Pixel
+     */
+    public static byte[] unpack(int pixel){
+        return new byte[]{(byte) (pixel >>> 24), (byte) (pixel >>> 16), (byte) (pixel >>> 8), (byte) pixel};
+    }
+
+    /**
+     * @param pixel (int) - RGBA packed pixel
+     * @return (int) - Red channel, between 0 and 255
+     */
+    public static int red(int pixel){
+        return pixel >>> 24;
+    }
+
+    /**
+     * @param pixel (int) - RGBA packed pixel
+     * @return (int) - Green channel, between 0 and 255
+     */
+    public static int green(int pixel){
+        return pixel >>> 16 & 0xFF;
+    }
+
+    /**
+     * @param pixel (int) - RGBA packed pixel
+     * @return (int) - Blue channel, between 0 and 255
+     */
+    public static int blue(int pixel){
+        return pixel >>> 8 & 0xFF;
+    }
+
+    /**
+     * @param pixel (int) - RGBA packed pixel
+     * @return (int) - Alpha channel, between 0 and 255
+     */
+    public static int alpha(int pixel){
+        return pixel & 0xFF;
+    }
+
+    /**
+     * Hash an RGBA packed pixel using the hash function specific to "Quite Ok Image" format
+     * @apiNote index = (r * 3 + g * 5 + b * 7 + a * 11) % 64
+     * @param pixel (int) - RGBA packed pixel
+     * @return (int) - hash of the pixel
+     */
+    public static int hash(int pixel){
+        return PixelKernels.hash(pixel);
+    }
+
+    /**
+     * Wrapping difference between the red channels of two pixels
+     * @param pixel (int) - RGBA packed pixel
+     * @param previous (int) - RGBA packed previous pixel
+     * @return (int) - Difference, between -128 and 127
+     */
+    public static int deltaRed(int pixel, int previous){
+        return (byte) ((pixel >>> 24) - (previous >>> 24));
+    }
+
+    /**
+     * Wrapping difference between the green channels of two pixels
+     * @param pixel (int) - RGBA packed pixel
+     * @param previous (int) - RGBA packed previous pixel
+     * @return (int) - Difference, between -128 and 127
+     */
+    public static int deltaGreen(int pixel, int previous){
+        return (byte) ((pixel >>> 16) - (previous >>> 16));
+    }
+
+    /**
+     * Wrapping difference between the blue channels of two pixels
+     * @param pixel (int) - RGBA packed pixel
+     * @param previous (int) - RGBA packed previous pixel
+     * @return (int) - Difference, between -128 and 127
+     */
+    public static int deltaBlue(int pixel, int previous){
+        return (byte) ((pixel >>> 8) - (previous >>> 8));
+    }
+
+    /**
+     * Add wrapping differences to the color channels of a pixel, the alpha channel is kept
+     * @param previous (int) - RGBA packed previous pixel
+     * @param dr (int) - Difference of the red channel
+     * @param dg (int) - Difference of the green channel
+     * @param db (int) - Difference of the blue channel
+     * @return (int) - RGBA packed pixel
+     */
+    public static int addDelta(int previous, int dr, int dg, int db){
+        return ((previous >>> 24) + dr) << 24 |
+                ((previous >>> 16) + dg & 0xFF) << 16 |
+                ((previous >>> 8) + db & 0xFF) << 8 |
+                (previous & 0xFF);
+    }
+
+    /**
+     * Check if the differences of a pixel can be stored in a QOI_OP_DIFF chunk
+     * @param dr (int) - Difference of the red channel
+     * @param dg (int) - Difference of the green channel
+     * @param db (int) - Difference of the blue channel
+     * @return (boolean) - true if the three differences are between -2 and 1
+     */
+    public static boolean isDiff(int dr, int dg, int db){
+        return (dr > -3) && (dr < 2) && (dg > -3) && (dg < 2) && (db > -3) && (db < 2);
+    }
+
+    /**
+     * Check if the differences of a pixel can be stored in a QOI_OP_LUMA chunk
+     * @param dr (int) - Difference of the red channel
+     * @param dg (int) - Difference of the green channel
+     * @param db (int) - Difference of the blue channel
+     * @return (boolean) - true if dg is between -32 and 31, dr - dg and db - dg between -8 and 7
+     */
+    public static boolean isLuma(int dr, int dg, int db){
+        return (dg > -33) && (dg < 32) && (dr - dg > -9) && (dr - dg < 8) && (db - dg > -9) && (db - dg < 8);
+    }
+
+    /**
+     * Write a QOI_OP_RGB chunk
+     * @param output (byte[]) - Array where to write the chunk
+     * @param position (int) - Index of the first byte of the chunk
+     * @param pixel (int) - RGBA packed pixel
+     * @return (int) - Index after the chunk
+     */
+    public static int writeRgb(byte[] output, int position, int pixel){
+        output[position] = QOI_OP_RGB_TAG;
+        output[position + 1] = (byte) (pixel >>> 24);
+        output[position + 2] = (byte) (pixel >>> 16);
+        output[position + 3] = (byte) (pixel >>> 8);
+        return position + 4;
+    }
+
+    /**
+     * Write a QOI_OP_RGBA chunk
+     * @param output (byte[]) - Array where to write the chunk
+     * @param position (int) - Index of the first byte of the chunk
+     * @param pixel (int) - RGBA packed pixel
+     * @return (int) - Index after the chunk
+     */
+    public static int writeRgba(byte[] output, int position, int pixel){
+        output[position] = QOI_OP_RGBA_TAG;
+        output[position + 1] = (byte) (pixel >>> 24);
+        output[position + 2] = (byte) (pixel >>> 16);
+        output[position + 3] = (byte) (pixel >>> 8);
+        output[position + 4] = (byte) pixel;
+        return position + 5;
+    }
+
+    /**
+     * Write a QOI_OP_INDEX chunk
+     * @param output (byte[]) - Array where to write the chunk
+     * @param position (int) - Index of the chunk
+     * @param hash (int) - Index in the hash table, between 0 and 63
+     * @return (int) - Index after the chunk
+     */
+    public static int writeIndex(byte[] output, int position, int hash){
+        output[position] = (byte) (QOI_OP_INDEX_TAG | hash);
+        return position + 1;
+    }
+
+    /**
+     * Write a QOI_OP_DIFF chunk
+     * @param output (byte[]) - Array where to write the chunk
+     * @param position (int) - Index of the chunk
+     * @param dr (int) - Difference of the red channel, checked by QOISpecification::isDiff
+     * @param dg (int) - Difference of the green channel
+     * @param db (int) - Difference of the blue channel
+     * @return (int) - Index after the chunk
+     */
+    public static int writeDiff(byte[] output, int position, int dr, int dg, int db){
+        output[position] = (byte) (QOI_OP_DIFF_TAG | (dr + 2) << 4 | (dg + 2) << 2 | (db + 2));
+        return position + 1;
+    }
+
+    /**
+     * Write a QOI_OP_LUMA chunk
+     * @param output (byte[]) - Array where to write the chunk
+     * @param position (int) - Index of the first byte of the chunk
+     * @param dr (int) - Difference of the red channel, checked by QOISpecification::isLuma
+     * @param dg (int) - Difference of the green channel
+     * @param db (int) - Difference of the blue channel
+     * @return (int) - Index after the chunk
+     */
+    public static int writeLuma(byte[] output, int position, int dr, int dg, int db){
+        output[position] = (byte) (QOI_OP_LUMA_TAG | (dg + 32));
+        output[position + 1] = (byte) ((dr - dg + 8) << 4 | (db - dg + 8));
+        return position + 2;
+    }
+
+    /**
+     * Write a QOI_OP_RUN chunk
+     * @param output (byte[]) - Array where to write the chunk
+     * @param position (int) - Index of the chunk
+     * @param count (int) - Length of the run, between 1 and 62
+     * @return (int) - Index after the chunk
+     */
+    public static int writeRun(byte[] output, int position, int count){
+        output[position] = (byte) (QOI_OP_RUN_TAG | (count - 1));
+        return position + 1;
+    }
+
 }
\ No newline at end of file
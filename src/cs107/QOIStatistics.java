@@ -0,0 +1,373 @@
+package cs107;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optional instrumentation of the codec : operations written by QOIEncoderState and read by
+ * QOIDecoderState (shared by every encoder and decoder), lengths of the runs, bytes per pixel and time spent in each phase.
+ * <ul>
+ *     <li>Enabled with the system property "cs107.statistics" (-Dcs107.statistics=true),
+ *     the counters are then published over JMX as "cs107:type=QOIStatistics" (See QOIStatisticsMXBean).</li>
+ *     <li>The codec loops are not touched : the operations are counted by scanning the chunks once
+ *     the call is over, in a Tally of the codec state added to the shared LongAdder counters
+ *     once per image (encoder) or per call (decoder).</li>
+ *     <li>An image is counted when a state encodes or decodes it from its first pixel :
+ *     the bands of QOIEncoder::qoiFileParallel and the segments of QOIDecoder::decodeQoiImageParallel
+ *     add their chunks and pixels to a single image, each band of a banded file is an image.</li>
+ *     <li>When disabled, QOIStatistics::ENABLED is a constant false for the JIT and the instrumentation
+ *     is removed from the compiled code.</li>
+ * </ul>
+ */
+public final class QOIStatistics implements QOIStatisticsMXBean {
+
+    /**
+     * true if the statistics are collected
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("cs107.statistics");
+
+    /**
+     * Name of the MBean
+     */
+    public static final String OBJECT_NAME = "cs107:type=QOIStatistics";
+
+    /**
+     * Chunks of the "Quite Ok Image" format
+     */
+    public enum Op { RUN, INDEX, DIFF, LUMA, RGB, RGBA }
+
+    /**
+     * Timed phases of the codec
+     */
+    public enum Phase {
+        /** Writing and parsing of the headers */
+        HEADER,
+        /** Conversions between ARGB and RGBA packed pixels, the ones fused in the codec loops excluded */
+        SWIZZLE,
+        /** QOIEncoderState and QOIDecoderState */
+        CODEC,
+        /** Helper::read and Helper::write */
+        IO
+    }
+
+    private static final QOIStatistics INSTANCE = new QOIStatistics();
+
+    static {
+        if (ENABLED){
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE,
+                        new ObjectName(OBJECT_NAME));
+            } catch (JMException e){
+                System.err.println("The codec statistics cannot be published over JMX : " + e.getMessage());
+            }
+        }
+    }
+
+    private final Counters encoded = new Counters();
+    private final Counters decoded = new Counters();
+    private final LongAdder[] phases = adders(Phase.values().length);
+
+    private QOIStatistics(){}
+
+    /**
+     * @return (QOIStatistics) - The statistics of the codec
+     */
+    public static QOIStatistics get(){
+        return INSTANCE;
+    }
+
+    /**
+     * Add the chunks written by an encoder to the statistics, then clear the tally
+     * @param tally (Tally) - Chunks written since the last call
+     */
+    static void encoded(Tally tally){
+        INSTANCE.encoded.add(tally);
+        INSTANCE.phases[Phase.CODEC.ordinal()].add(tally.clear());
+    }
+
+    /**
+     * Add the chunks read by a decoder to the statistics, then clear the tally
+     * @param tally (Tally) - Chunks read since the last call
+     */
+    static void decoded(Tally tally){
+        INSTANCE.decoded.add(tally);
+        INSTANCE.phases[Phase.CODEC.ordinal()].add(tally.clear());
+    }
+
+    /**
+     * Record the time spent in a phase
+     * @param phase (Phase) - Phase timed
+     * @param start (long) - Value of System::nanoTime at the beginning of the phase
+     */
+    static void time(Phase phase, long start){
+        INSTANCE.phases[phase.ordinal()].add(System.nanoTime() - start);
+    }
+
+    /**
+     * @return (long) - System::nanoTime if the statistics are enabled, 0 otherwise
+     */
+    static long start(){
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    @Override
+    public long getEncodedImages(){
+        return encoded.images.sum();
+    }
+
+    @Override
+    public long getEncodedPixels(){
+        return encoded.pixels.sum();
+    }
+
+    @Override
+    public long getEncodedBytes(){
+        return encoded.bytes.sum();
+    }
+
+    @Override
+    public Map<String, Long> getEncodedOps(){
+        return encoded.ops();
+    }
+
+    @Override
+    public long[] getEncodedRunLengths(){
+        return sums(encoded.runs);
+    }
+
+    @Override
+    public double getEncodedBytesPerPixel(){
+        return encoded.bytesPerPixel();
+    }
+
+    @Override
+    public double getEncodedIndexHitRate(){
+        return encoded.indexHitRate();
+    }
+
+    @Override
+    public long getDecodedImages(){
+        return decoded.images.sum();
+    }
+
+    @Override
+    public long getDecodedPixels(){
+        return decoded.pixels.sum();
+    }
+
+    @Override
+    public long getDecodedBytes(){
+        return decoded.bytes.sum();
+    }
+
+    @Override
+    public Map<String, Long> getDecodedOps(){
+        return decoded.ops();
+    }
+
+    @Override
+    public long[] getDecodedRunLengths(){
+        return sums(decoded.runs);
+    }
+
+    @Override
+    public double getDecodedBytesPerPixel(){
+        return decoded.bytesPerPixel();
+    }
+
+    @Override
+    public double getDecodedIndexHitRate(){
+        return decoded.indexHitRate();
+    }
+
+    @Override
+    public Map<String, Long> getPhaseNanos(){
+        var map = new LinkedHashMap<String, Long>();
+        for (var phase : Phase.values()){
+            map.put(phase.name(), phases[phase.ordinal()].sum());
+        }
+        return map;
+    }
+
+    @Override
+    public void reset(){
+        encoded.reset();
+        decoded.reset();
+        for (var adder : phases){
+            adder.reset();
+        }
+    }
+
+    /**
+     * Count the chunks of "Quite Ok Image" data
+     * @param data (byte[]) - Data holding the chunks
+     * @param from (int) - Index of the first chunk
+     * @param to (int) - Index after the last chunk
+     * @param ops (long[]) - Counters of each QOIStatistics.Op, incremented for each chunk
+     * @param runs (long[]) - Counters of the runs of each length (62 counters, index 0 for runs of 1 pixel)
+     */
+    static void scan(byte[] data, int from, int to, long[] ops, long[] runs){
+        assert (ops.length == Op.values().length) && (runs.length == 62);
+        int i = from;
+        while (i < to){
+            int chunk = data[i] & 0xFF;
+            if (chunk == (QOISpecification.QOI_OP_RGB_TAG & 0xFF)){
+                ++ops[Op.RGB.ordinal()];
+                i += 4;
+            } else if (chunk == (QOISpecification.QOI_OP_RGBA_TAG & 0xFF)){
+                ++ops[Op.RGBA.ordinal()];
+                i += 5;
+            } else {
+                switch (chunk >>> 6){
+                    case 0b00 -> ++ops[Op.INDEX.ordinal()];
+                    case 0b01 -> ++ops[Op.DIFF.ordinal()];
+                    case 0b10 -> {
+                        ++ops[Op.LUMA.ordinal()];
+                        ++i;
+                    }
+                    default -> {
+                        ++ops[Op.RUN.ordinal()];
+                        ++runs[chunk & 0x3F];
+                    }
+                }
+                ++i;
+            }
+        }
+    }
+
+    private static LongAdder[] adders(int count){
+        var adders = new LongAdder[count];
+        for (int i = 0 ; i < count ; ++i){
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static long[] sums(LongAdder[] adders){
+        var sums = new long[adders.length];
+        for (int i = 0 ; i < adders.length ; ++i){
+            sums[i] = adders[i].sum();
+        }
+        return sums;
+    }
+
+    /**
+     * Chunks and pixels counted by one codec state, not shared between threads
+     */
+    static final class Tally {
+
+        private final long[] ops = new long[Op.values().length];
+        private final long[] runs = new long[62];
+        private long pixels;
+        private long bytes;
+        private long nanos;
+        private boolean image;
+
+        /**
+         * Mark the beginning of an image : the next published tally counts one more image
+         */
+        void begin(){
+            image = true;
+        }
+
+        /**
+         * Mark the continuation of an image counted elsewhere
+         */
+        void follow(){
+            image = false;
+        }
+
+        /**
+         * Count the chunks of a call
+         * @param data (byte[]) - Data holding the chunks
+         * @param from (int) - Index of the first chunk
+         * @param to (int) - Index after the last chunk
+         * @param pixels (long) - Number of pixels of the chunks
+         * @param start (long) - Value of System::nanoTime at the beginning of the call
+         */
+        void add(byte[] data, int from, int to, long pixels, long start){
+            scan(data, from, to, ops, runs);
+            this.pixels += pixels;
+            bytes += to - from;
+            nanos += System.nanoTime() - start;
+        }
+
+        private long clear(){
+            long nanos = this.nanos;
+            Arrays.fill(ops, 0);
+            Arrays.fill(runs, 0);
+            pixels = 0;
+            bytes = 0;
+            this.nanos = 0;
+            image = false;
+            return nanos;
+        }
+    }
+
+    /**
+     * Counters of one direction of the codec
+     */
+    private static final class Counters {
+
+        private final LongAdder images = new LongAdder();
+        private final LongAdder pixels = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder[] ops = adders(Op.values().length);
+        private final LongAdder[] runs = adders(62);
+
+        private void add(Tally tally){
+            if (tally.image)
+                images.increment();
+            pixels.add(tally.pixels);
+            bytes.add(tally.bytes);
+            for (int k = 0 ; k < ops.length ; ++k){
+                if (tally.ops[k] != 0)
+                    ops[k].add(tally.ops[k]);
+            }
+            for (int k = 0 ; k < runs.length ; ++k){
+                if (tally.runs[k] != 0)
+                    runs[k].add(tally.runs[k]);
+            }
+        }
+
+        private Map<String, Long> ops(){
+            var map = new LinkedHashMap<String, Long>();
+            for (var op : Op.values()){
+                map.put(op.name(), ops[op.ordinal()].sum());
+            }
+            return map;
+        }
+
+        private double bytesPerPixel(){
+            long pixels = this.pixels.sum();
+            return (pixels == 0) ? 0 : (double) bytes.sum() / pixels;
+        }
+
+        private double indexHitRate(){
+            long chunks = 0;
+            for (var op : Op.values()){
+                if (op != Op.RUN)
+                    chunks += ops[op.ordinal()].sum();
+            }
+            return (chunks == 0) ? 0 : (double) ops[Op.INDEX.ordinal()].sum() / chunks;
+        }
+
+        private void reset(){
+            images.reset();
+            pixels.reset();
+            bytes.reset();
+            for (var adder : ops){
+                adder.reset();
+            }
+            for (var adder : runs){
+                adder.reset();
+            }
+        }
+    }
+
+}
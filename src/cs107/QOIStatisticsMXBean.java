@@ -0,0 +1,91 @@
+package cs107;
+
+import java.util.Map;
+
+/**
+ * Management interface of QOIStatistics, published as "cs107:type=QOIStatistics"
+ * when the statistics are enabled (See QOIStatistics::ENABLED)
+ */
+public interface QOIStatisticsMXBean {
+
+    /**
+     * @return (long) - Number of images encoded (See QOIStatistics)
+     */
+    long getEncodedImages();
+
+    /**
+     * @return (long) - Number of pixels encoded
+     */
+    long getEncodedPixels();
+
+    /**
+     * @return (long) - Number of bytes written by the encoder
+     */
+    long getEncodedBytes();
+
+    /**
+     * @return (Map<String, Long>) - Number of chunks written by the encoder, by operation
+     */
+    Map<String, Long> getEncodedOps();
+
+    /**
+     * @return (long[]) - Number of runs written by the encoder, by length (index 0 for runs of 1 pixel)
+     */
+    long[] getEncodedRunLengths();
+
+    /**
+     * @return (double) - Number of bytes written per pixel encoded
+     */
+    double getEncodedBytesPerPixel();
+
+    /**
+     * @return (double) - Ratio of the QOI_OP_INDEX chunks among the chunks written by the encoder, runs excluded
+     */
+    double getEncodedIndexHitRate();
+
+    /**
+     * @return (long) - Number of images decoded from their first pixel (See QOIStatistics)
+     */
+    long getDecodedImages();
+
+    /**
+     * @return (long) - Number of pixels decoded
+     */
+    long getDecodedPixels();
+
+    /**
+     * @return (long) - Number of bytes read by the decoder
+     */
+    long getDecodedBytes();
+
+    /**
+     * @return (Map<String, Long>) - Number of chunks read by the decoder, by operation
+     */
+    Map<String, Long> getDecodedOps();
+
+    /**
+     * @return (long[]) - Number of runs read by the decoder, by length (index 0 for runs of 1 pixel)
+     */
+    long[] getDecodedRunLengths();
+
+    /**
+     * @return (double) - Number of bytes read per pixel decoded
+     */
+    double getDecodedBytesPerPixel();
+
+    /**
+     * @return (double) - Ratio of the QOI_OP_INDEX chunks among the chunks read by the decoder, runs excluded
+     */
+    double getDecodedIndexHitRate();
+
+    /**
+     * @return (Map<String, Long>) - Time spent in each phase, in nanoseconds summed over all threads
+     */
+    Map<String, Long> getPhaseNanos();
+
+    /**
+     * Set all the counters back to zero
+     */
+    void reset();
+
+}
@@ -0,0 +1,211 @@
+package cs107;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Incremental "Quite Ok Image" Decoder.
+ * The file is read from a stream through a small reusable buffer and the rows are
+ * handed out as soon as they are complete, the decoding state being carried across
+ * the refills of the buffer. The memory used does not depend on the size of the image.
+ * @apiNote Not thread safe
+ */
+public final class QOIStreamDecoder implements Closeable {
+
+    /**
+     * Default size of the input buffer
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Callback receiving the decoded rows of an image
+     */
+    @FunctionalInterface
+    public interface RowConsumer {
+        /**
+         * Receive a decoded row
+         * @param y (int) - Index of the row in the image
+         * @param row (int[]) - RGBA packed pixels of the row, only valid during the call
+         * @param offset (int) - Index in row of the first pixel
+         * @param width (int) - Number of pixels of the row
+         * @throws IOException if the row cannot be consumed
+         */
+        void accept(int y, int[] row, int offset, int width) throws IOException;
+    }
+
+    private final ReadableByteChannel channel;
+    private final byte[] buffer;
+    private final ByteBuffer wrapper;
+    private final QOIDecoderState state = new QOIDecoderState();
+    private final int width;
+    private final int height;
+    private final byte channels;
+    private final byte colorSpace;
+    private int start = 0;
+    private int limit = 0;
+    private boolean eof = false;
+    private int row = 0;
+
+    /**
+     * Start the decoding of an image from a stream
+     * @param input (InputStream) - Stream to read the file from
+     * @throws IOException if the header cannot be read
+     */
+    public QOIStreamDecoder(InputStream input) throws IOException {
+        this(Channels.newChannel(input), DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Start the decoding of an image from a channel
+     * @param channel (ReadableByteChannel) - Channel to read the file from
+     * @param bufferSize (int) - Size of the input buffer
+     * @throws AssertionError if the channel is null, the buffer is too small or the header is corrupted
+     * @throws IOException if the header cannot be read
+     */
+    public QOIStreamDecoder(ReadableByteChannel channel, int bufferSize) throws IOException {
+        assert channel != null;
+        assert bufferSize >= QOISpecification.HEADER_SIZE + QOISpecification.QOI_EOF.length;
+
+        this.channel = channel;
+        this.buffer  = new byte[bufferSize];
+        this.wrapper = ByteBuffer.wrap(buffer);
+
+        while ((limit < QOISpecification.HEADER_SIZE) && !eof)
+            refill();
+        if (limit < QOISpecification.HEADER_SIZE)
+            throw new EOFException("Truncated \"Quite Ok Image\" header");
+        var header = QOIDecoder.decodeHeader(Arrays.copyOf(buffer, QOISpecification.HEADER_SIZE));
+        this.width      = header[0];
+        this.height     = header[1];
+        this.channels   = (byte) header[2];
+        this.colorSpace = (byte) header[3];
+        this.start      = QOISpecification.HEADER_SIZE;
+    }
+
+    /**
+     * @return (int) - Width of the image
+     */
+    public int width(){
+        return width;
+    }
+
+    /**
+     * @return (int) - Height of the image
+     */
+    public int height(){
+        return height;
+    }
+
+    /**
+     * @return (byte) - Number of channels of the image
+     */
+    public byte channels(){
+        return channels;
+    }
+
+    /**
+     * @return (byte) - Color space of the image
+     */
+    public byte colorSpace(){
+        return colorSpace;
+    }
+
+    /**
+     * @return (int) - Index of the next row to be decoded
+     */
+    public int nextRow(){
+        return row;
+    }
+
+    /**
+     * Decode the next row of the image
+     * @param pixels (int[]) - Array where to store the RGBA packed pixels of the row
+     * @param offset (int) - Index in pixels of the first pixel of the row
+     * @return (boolean) - false if all the rows were already decoded, true otherwise
+     * @throws AssertionError if the array is null or too small
+     * @throws EOFException if the file is truncated : a chunk or the QOI_EOF trailer
+     * (checked after the last row) ends after the end of the stream
+     * @throws IOException if the file cannot be read or the QOI_EOF trailer is corrupted
+     */
+    public boolean readRow(int[] pixels, int offset) throws IOException {
+        assert pixels != null;
+        assert (offset >= 0) && (offset + width <= pixels.length);
+        if (row == height)
+            return false;
+
+        int p = offset;
+        int end = offset + width;
+        while (true){
+            // A chunk is at most 5 bytes long, only decode the ones fully in the buffer.
+            // At the end of the stream, the last 8 bytes are the QOI_EOF trailer : a chunk starting
+            // before it ends before the end of the stream, the other ones are missing bytes
+            int to = eof ? limit - QOISpecification.QOI_EOF.length : limit - 4;
+            p = state.decode(buffer, start, to, pixels, p, end);
+            start = state.next();
+            if (p == end)
+                break;
+            if (eof)
+                throw new EOFException("Truncated \"Quite Ok Image\" data at row " + row);
+            refill();
+        }
+        if (++row == height)
+            readTrailer();
+        return true;
+    }
+
+    /**
+     * Decode all the remaining rows of the image and give them to the consumer one by one
+     * @param consumer (RowConsumer) - Callback receiving the rows
+     * @throws AssertionError if the consumer is null
+     * @throws IOException if the file cannot be read or the consumer fails
+     */
+    public void decode(RowConsumer consumer) throws IOException {
+        assert consumer != null;
+
+        var pixels = new int[width];
+        while (row < height){
+            var y = row;
+            readRow(pixels, 0);
+            consumer.accept(y, pixels, 0, width);
+        }
+    }
+
+    /**
+     * Close the underlying channel
+     * @throws IOException if the channel cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readTrailer() throws IOException {
+        while ((limit - start < QOISpecification.QOI_EOF.length) && !eof)
+            refill();
+        if (limit - start < QOISpecification.QOI_EOF.length)
+            throw new EOFException("Truncated \"Quite Ok Image\" end marker");
+        if (!Arrays.equals(buffer, start, start + QOISpecification.QOI_EOF.length,
+                QOISpecification.QOI_EOF, 0, QOISpecification.QOI_EOF.length))
+            throw new IOException("Corrupted \"Quite Ok Image\" end marker");
+        start += QOISpecification.QOI_EOF.length;
+    }
+
+    private void refill() throws IOException {
+        System.arraycopy(buffer, start, buffer, 0, limit - start);
+        limit -= start;
+        start = 0;
+        wrapper.clear().position(limit);
+        int read = channel.read(wrapper);
+        if (read < 0)
+            eof = true;
+        else
+            limit += read;
+    }
+
+}
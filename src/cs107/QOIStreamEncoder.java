@@ -0,0 +1,191 @@
+package cs107;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Incremental "Quite Ok Image" Encoder.
+ * The header is written up front, the pixels are then given row by row (or in any chunks)
+ * and the encoding is flushed to the destination through a small reusable buffer.
+ * The memory used does not depend on the size of the image.
+ * @apiNote Not thread safe
+ */
+public final class QOIStreamEncoder implements Closeable {
+
+    /**
+     * Default size of the output buffer
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private final WritableByteChannel channel;
+    private final byte[] buffer;
+    private final ByteBuffer wrapper;
+    private final QOIEncoderState state = new QOIEncoderState();
+    private final int width;
+    private final byte channels;
+    private final long expected;
+    private long written = 0;
+    private long size = 0;
+    private int idx = 0;
+    private boolean finished = false;
+
+    // Never committed : tell whether the events are recorded before allocating or timing them (See Event::isEnabled)
+    private final QOIEvents.Encode encodes = new QOIEvents.Encode();
+    private final QOIEvents.FileWrite writes = new QOIEvents.FileWrite();
+
+    /**
+     * Start the encoding of an image to a stream
+     * @param output (OutputStream) - Destination of the encoding
+     * @param width (int) - Width of the image
+     * @param height (int) - Height of the image
+     * @param channels (byte) - Number of channels
+     * @param colorSpace (byte) - Color space
+     * @throws IOException if the header cannot be written
+     */
+    public QOIStreamEncoder(OutputStream output, int width, int height, byte channels, byte colorSpace) throws IOException {
+        this(Channels.newChannel(output), width, height, channels, colorSpace, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Start the encoding of an image to a channel
+     * @param channel (WritableByteChannel) - Destination of the encoding
+     * @param width (int) - Width of the image
+     * @param height (int) - Height of the image
+     * @param channels (byte) - Number of channels
+     * @param colorSpace (byte) - Color space
+     * @param bufferSize (int) - Size of the output buffer
+     * @throws AssertionError if the channel is null, the header is corrupted or the buffer is too small
+     * @throws IOException if the header cannot be written
+     */
+    public QOIStreamEncoder(WritableByteChannel channel, int width, int height, byte channels, byte colorSpace,
+                            int bufferSize) throws IOException {
+        assert channel != null;
+        assert bufferSize >= QOISpecification.HEADER_SIZE + 6;
+
+        this.channel  = channel;
+        this.buffer   = new byte[bufferSize];
+        this.wrapper  = ByteBuffer.wrap(buffer);
+        this.width    = width;
+        this.channels = channels;
+        this.expected = (long) width * height;
+
+        var header = QOIEncoder.qoiHeader(width, height, channels, colorSpace);
+        System.arraycopy(header, 0, buffer, 0, header.length);
+        idx = header.length;
+    }
+
+    /**
+     * Encode the next row of the image
+     * @param row (int[]) - Packed pixels of the row
+     * @param offset (int) - Index in row of the first pixel
+     * @param format (Helper.PixelFormat) - Layout of the packed pixels
+     * @throws IOException if the encoding cannot be written
+     */
+    public void writeRow(int[] row, int offset, Helper.PixelFormat format) throws IOException {
+        writePixels(row, offset, width, format);
+    }
+
+    /**
+     * Encode the next pixels of the image, rows being given one after the other
+     * @param pixels (int[]) - Packed pixels
+     * @param offset (int) - Index in pixels of the first pixel
+     * @param length (int) - Number of pixels to encode
+     * @param format (Helper.PixelFormat) - Layout of the packed pixels
+     * @throws AssertionError if the array is null, the indices are invalid
+     * or the image already has all its pixels
+     * @throws IOException if the encoding cannot be written
+     */
+    public void writePixels(int[] pixels, int offset, int length, Helper.PixelFormat format) throws IOException {
+        assert (pixels != null) && (format != null);
+        assert (offset >= 0) && (length >= 0) && (offset + length <= pixels.length);
+        assert !finished && (written + length <= expected);
+
+        QOIEvents.Encode event = null;
+        if (encodes.isEnabled()){
+            event = new QOIEvents.Encode();
+            event.begin();
+        }
+        long before = size + idx;
+        boolean argb = format == Helper.PixelFormat.ARGB;
+        int end = offset + length;
+        while (offset < end){
+            // 5 bytes per pixel at most, plus one for a pending run
+            int room = (buffer.length - idx - 1) / 5;
+            if (room == 0){
+                flush();
+                continue;
+            }
+            int next = Math.min(end, offset + room);
+            idx = state.encode(pixels, offset, next, argb, buffer, idx);
+            offset = next;
+        }
+        if (event != null){
+            // Rows touched by the call, partial rows included
+            long rows = (width == 0) ? 0 : (written + length + width - 1) / width - written / width;
+            event.commit(width, (int) rows, channels, 4L * length, size + idx - before);
+        }
+        written += length;
+    }
+
+    /**
+     * Write the end of the image ("End Of File") and flush the buffer.
+     * The underlying destination is not closed.
+     * @throws AssertionError if some pixels of the image were not given
+     * @throws IOException if the encoding cannot be written
+     */
+    public void finish() throws IOException {
+        if (finished)
+            return;
+        assert written == expected;
+
+        if (buffer.length - idx < 1 + QOISpecification.QOI_EOF.length)
+            flush();
+        idx = state.finish(buffer, idx);
+        System.arraycopy(QOISpecification.QOI_EOF, 0, buffer, idx, QOISpecification.QOI_EOF.length);
+        idx += QOISpecification.QOI_EOF.length;
+        flush();
+        finished = true;
+    }
+
+    /**
+     * Finish the image and close the underlying destination
+     * @throws IOException if the encoding cannot be written or the destination cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Number of bytes of the encoding written to the destination so far
+     * @return (long) - Size of the file once QOIStreamEncoder::finish has been called
+     */
+    public long size(){
+        return size;
+    }
+
+    private void flush() throws IOException {
+        QOIEvents.FileWrite event = null;
+        if (writes.isEnabled()){
+            event = new QOIEvents.FileWrite();
+            event.begin();
+        }
+        wrapper.clear().limit(idx);
+        while (wrapper.hasRemaining()){
+            channel.write(wrapper);
+        }
+        if (event != null)
+            event.commit(idx);
+        size += idx;
+        idx = 0;
+    }
+
+}
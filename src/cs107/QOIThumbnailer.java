@@ -0,0 +1,134 @@
+package cs107;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Fused decoding and downscaling of "Quite Ok Image" files.
+ * The rows are averaged into the thumbnail (box filter) as soon as they are decoded,
+ * the image is never stored at full resolution : only one decoded row and
+ * one row of accumulators of the thumbnail are kept in memory.
+ * @apiNote The thumbnail can then be written with Helper::writeQoi or Helper::writeImage
+ */
+public final class QOIThumbnailer {
+
+    // Hide default constructor
+    private QOIThumbnailer(){}
+
+    /**
+     * Decode an image from a stream and downscale it
+     * @param decoder (QOIStreamDecoder) - Decoder of the image, no row must have been read yet
+     * @param width (int) - Width of the thumbnail, at most the width of the image
+     * @param height (int) - Height of the thumbnail, at most the height of the image
+     * @return (Helper.PixelImage) - Thumbnail, stored as RGBA packed pixels without padding
+     * @throws AssertionError if the decoder is null, has already been used or the size is invalid
+     * @throws IOException if the file cannot be read
+     */
+    public static Helper.PixelImage thumbnail(QOIStreamDecoder decoder, int width, int height) throws IOException {
+        assert decoder != null;
+        assert decoder.nextRow() == 0;
+        assert (width > 0) && (width <= decoder.width());
+        assert (height > 0) && (height <= decoder.height());
+
+        var filter = new BoxFilter(decoder.width(), decoder.height(), width, height);
+        decoder.decode(filter::accept);
+        return new Helper.PixelImage(filter.output, width, height, Helper.PixelFormat.RGBA,
+                decoder.channels(), decoder.colorSpace());
+    }
+
+    /**
+     * Decode a "Quite Ok Image" file and downscale it so that it fits in a square, keeping its aspect ratio.
+     * An image already smaller than the square is decoded at its size
+     * @param path (String) - Relative or Absolute path to the file
+     * @param maxSize (int) - Side of the square
+     * @return (Helper.PixelImage) - Thumbnail, stored as RGBA packed pixels without padding
+     * @throws AssertionError if path is null or maxSize is not positive
+     */
+    public static Helper.PixelImage thumbnail(String path, int maxSize){
+        assert path != null;
+        assert maxSize > 0;
+        try (var decoder = new QOIStreamDecoder(FileChannel.open(Path.of(path), StandardOpenOption.READ),
+                QOIStreamDecoder.DEFAULT_BUFFER_SIZE)){
+            var scale = Math.min(1.0, (double) maxSize / Math.max(decoder.width(), decoder.height()));
+            var width  = Math.max(1, (int) Math.round(decoder.width() * scale));
+            var height = Math.max(1, (int) Math.round(decoder.height() * scale));
+            return thumbnail(decoder, width, height);
+        } catch (IOException e){
+            return Helper.fail("An error occurred while trying to read from : \"%s\"%n", path);
+        }
+    }
+
+    /**
+     * Box filter averaging each pixel of the image in the pixel of the thumbnail containing it.
+     * The colors are weighted by the alpha channel, so that transparent pixels do not darken their neighbours
+     */
+    private static final class BoxFilter {
+
+        private final int height;
+        private final int outputWidth;
+        private final int outputHeight;
+        private final int[] columns;
+        private final long[] red;
+        private final long[] green;
+        private final long[] blue;
+        private final long[] alpha;
+        private final int[] count;
+        private final int[] output;
+        private int line = 0;
+
+        private BoxFilter(int width, int height, int outputWidth, int outputHeight){
+            this.height = height;
+            this.outputWidth = outputWidth;
+            this.outputHeight = outputHeight;
+            this.columns = new int[width];
+            for (var x = 0; x < width; ++x){
+                columns[x] = (int) ((long) x * outputWidth / width);
+            }
+            this.red   = new long[outputWidth];
+            this.green = new long[outputWidth];
+            this.blue  = new long[outputWidth];
+            this.alpha = new long[outputWidth];
+            this.count = new int[outputWidth];
+            this.output = new int[outputWidth * outputHeight];
+        }
+
+        private void accept(int y, int[] row, int offset, int length){
+            var target = (int) ((long) y * outputHeight / height);
+            if (target != line){
+                flush();
+                line = target;
+            }
+            for (var x = 0; x < length; ++x){
+                var pixel  = row[offset + x];
+                var column = columns[x];
+                var a = pixel & 0xFF;
+                red[column]   += (long) (pixel >>> 24) * a;
+                green[column] += (long) (pixel >>> 16 & 0xFF) * a;
+                blue[column]  += (long) (pixel >>> 8 & 0xFF) * a;
+                alpha[column] += a;
+                ++count[column];
+            }
+            if (y == height - 1)
+                flush();
+        }
+
+        private void flush(){
+            var base = line * outputWidth;
+            for (var x = 0; x < outputWidth; ++x){
+                var a = alpha[x];
+                var n = count[x];
+                var pixel = 0;
+                if (a > 0){
+                    pixel = (int) ((red[x] + a / 2) / a) << 24 | (int) ((green[x] + a / 2) / a) << 16 |
+                            (int) ((blue[x] + a / 2) / a) << 8 | (int) ((a + n / 2) / n);
+                }
+                output[base + x] = pixel;
+                red[x] = green[x] = blue[x] = alpha[x] = 0;
+                count[x] = 0;
+            }
+        }
+    }
+
+}
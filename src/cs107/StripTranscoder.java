@@ -0,0 +1,123 @@
+package cs107;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Converts an image ("PNG", ...) to "Quite Ok Image" strip by strip.
+ * Each strip of rows is given to a QOIStreamEncoder, which keeps its run, previous pixel
+ * and hash table between strips, so the memory used depends on the size of a strip, not on the size of the image.
+ * <ul>
+ *     <li>The usual "PNG" layouts (8 bits per sample, not interlaced, truecolor or indexed) are
+ *     read row after row by PNGRowReader, the file is read only once.</li>
+ *     <li>The other images are read with ImageReadParam::setSourceRegion into a reused image.
+ *     The ImageIO readers cannot seek to a row : they decode the file from the beginning for every strip
+ *     and only keep the rows of the strip, so the strips should be as large as the memory allows.</li>
+ * </ul>
+ */
+public final class StripTranscoder {
+
+    /**
+     * Default number of pixels of a strip (16 MB of packed pixels)
+     */
+    public static final int DEFAULT_STRIP_PIXELS = 1 << 22;
+
+    // Hide default constructor
+    private StripTranscoder(){}
+
+    /**
+     * Convert an image to "Quite Ok Image", with strips of about StripTranscoder::DEFAULT_STRIP_PIXELS pixels
+     * @param input (Path) - Image to convert
+     * @param output (WritableByteChannel) - Destination of the "Quite Ok Image" file, not closed
+     * @throws IOException if the image cannot be read or the file cannot be written
+     */
+    public static void transcode(Path input, WritableByteChannel output) throws IOException {
+        transcode(input, output, DEFAULT_STRIP_PIXELS);
+    }
+
+    /**
+     * Convert an image to "Quite Ok Image"
+     * @param input (Path) - Image to convert
+     * @param output (WritableByteChannel) - Destination of the "Quite Ok Image" file, not closed
+     * @param stripPixels (int) - Maximal number of pixels of a strip, a strip has at least one row
+     * @throws AssertionError if one of the arguments is null or stripPixels is not positive
+     * @throws IOException if the image cannot be read or the file cannot be written
+     */
+    public static void transcode(Path input, WritableByteChannel output, int stripPixels) throws IOException {
+        assert (input != null) && (output != null);
+        assert stripPixels > 0;
+
+        var transcode = new QOIEvents.Transcode();
+        transcode.begin();
+        try (var rows = PNGRowReader.open(input)){
+            if (rows != null){
+                var width = rows.width();
+                var height = rows.height();
+                var count = Math.max(1, Math.min(height, stripPixels / width));
+                var strip = new int[count * width];
+                var encoder = new QOIStreamEncoder(output, width, height, (byte) (rows.hasAlpha() ? 4 : 3),
+                        QOISpecification.sRGB, QOIStreamEncoder.DEFAULT_BUFFER_SIZE);
+                for (var y = 0; y < height; y += count){
+                    var length = Math.min(count, height - y);
+                    var read = new QOIEvents.Read();
+                    read.begin();
+                    var compressed = rows.compressedBytes();
+                    for (var i = 0; i < length; ++i){
+                        rows.readRow(strip, i * width);
+                    }
+                    read.commit(width, length, rows.hasAlpha() ? 4 : 3, rows.compressedBytes() - compressed, 4L * length * width);
+                    encoder.writePixels(strip, 0, length * width, Helper.PixelFormat.ARGB);
+                }
+                encoder.finish();
+                transcode.commit(width, height, rows.hasAlpha() ? 4 : 3, Files.size(input), encoder.size());
+                return;
+            }
+        }
+        transcodeRegions(input, output, stripPixels, transcode);
+    }
+
+    private static void transcodeRegions(Path input, WritableByteChannel output, int stripPixels,
+                                         QOIEvents.Transcode transcode) throws IOException {
+        try (var stream = ImageIO.createImageInputStream(input.toFile())){
+            if (stream == null)
+                throw new IOException("Cannot open : " + input);
+            var readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext())
+                throw new IOException("No reader for the format of : " + input);
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, false, true);
+                var width  = reader.getWidth(0);
+                var height = reader.getHeight(0);
+                var type   = reader.getImageTypes(0).next();
+                var rows   = Math.max(1, Math.min(height, stripPixels / width));
+                var strip  = type.createBufferedImage(width, rows);
+                var channels = (byte) (type.getColorModel().hasAlpha() ? 4 : 3);
+
+                var param = reader.getDefaultReadParam();
+                param.setDestination(strip);
+                var encoder = new QOIStreamEncoder(output, width, height, channels, QOISpecification.sRGB,
+                        QOIStreamEncoder.DEFAULT_BUFFER_SIZE);
+                for (var y = 0; y < height; y += rows){
+                    var count = Math.min(rows, height - y);
+                    param.setSourceRegion(new Rectangle(0, y, width, count));
+                    var read = new QOIEvents.Read();
+                    read.begin();
+                    reader.read(0, param);
+                    read.commit(width, count, channels, 0, 4L * count * width);
+                    encoder.writePixels(Helper.pixels(strip), 0, count * width, Helper.PixelFormat.ARGB);
+                }
+                encoder.finish();
+                transcode.commit(width, height, channels, Files.size(input), encoder.size());
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+}